@@ -0,0 +1,55 @@
+package game;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** 寫 snapshot（只編碼）與整個 checkpoint（編碼 + crc + 複製進 memory-mapped 檔案） */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckpointBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int entities;
+
+    GameEngine engine;
+    ByteBuffer buf;
+    Path file;
+    Checkpoint checkpoint;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        engine = Scenarios.build(entities, entities, 42);
+        Scenarios.fillTrail(engine, 6000, 100);
+        buf = ByteBuffer.allocate(4 << 20);
+        file = Files.createTempFile("snake-bench", ".snck");
+        checkpoint = new Checkpoint(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        checkpoint.close();
+        engine.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public ByteBuffer writeSnapshot() {
+        buf.clear();
+        engine.writeSnapshot(buf);
+        return buf;
+    }
+
+    @Benchmark
+    public void save() {
+        checkpoint.save(engine);
+    }
+}
@@ -0,0 +1,42 @@
+package game;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** 撿經驗球；球都不在玩家格子上，量的是每幀的檢查成本（超過格子數的球會合併） */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrbBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    int orbs;
+
+    GameEngine engine;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = Scenarios.build(0, 0, 42);
+        int cells = Scenarios.COLS * Scenarios.ROWS;
+        for (int n = 0, added = 0; added < orbs; n++) {
+            int gx = n % cells % Scenarios.COLS, gy = n % cells / Scenarios.COLS;
+            if (gx == engine.px && gy == engine.py) continue;
+            engine.addExpOrb(gx, gy);
+            added++;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public void pickExp() {
+        engine.pickExp();
+    }
+}
@@ -0,0 +1,49 @@
+package game;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/** tick 裡找最近敵人與子彈更新兩個熱點 */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhaseBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    int entities;
+
+    GameEngine engine;
+    int q;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        engine = Scenarios.build(entities, entities, 42);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public void findNearestEnemyPixel(Blackhole bh) {
+        // 在地圖上輪流換查詢點
+        Arena a = engine.arena;
+        q = (q + 7919) % (a.width * a.rows);
+        double qx = q % a.width;
+        double qy = (q / a.width) * a.cell;
+        bh.consume(engine.findNearestEnemyPixel(qx, qy));
+    }
+
+    /** homing + 位移 + 碰撞；子彈打完或飛出去就補回來 */
+    @Benchmark
+    public void updateBullets() {
+        engine.updateBullets(GameEngine.SIM_DT);
+        Scenarios.topUpBullets(engine, entities);
+    }
+}
@@ -0,0 +1,120 @@
+package game;
+
+import cards.AutoCardChooser;
+import data.NoopRunRepository;
+import entities.GridPos;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/** benchmark 用的固定 seed 場景 */
+final class Scenarios {
+
+    static final int COLS = Arena.DEFAULT.cols, ROWS = Arena.DEFAULT.rows, CELL = Arena.DEFAULT.cell;
+
+    private static final int SAFE = 6;           // 玩家周圍幾格內一開始不放敵人
+    private static final int CELLS_PER_ENEMY = 8;  // 敵人多的時候地圖放大，維持差不多的密度
+    private static final int WARMUP_TICKS = 120;
+
+    private static final ChaseBot BOT = new ChaseBot();
+
+    private Scenarios() {}
+
+    /**
+     * 放好 enemies 隻敵人、bullets 顆子彈、由 ChaseBot 先玩一小段的引擎。敵人血很多，數量不會變；
+     * 敵人多到預設地圖放不下時，地圖依比例放大而且整張都在活動範圍內（每隻都會走）。
+     * 有要敵人或子彈卻沒有（玩家被包死、打不到東西）就直接丟例外，不量一個空轉的 tick。
+     */
+    static GameEngine build(int enemies, int bullets, long seed) {
+        Random r = new Random(seed);
+        GameEngine engine = new GameEngine(arenaFor(enemies), 5, new AutoCardChooser(new GameRng(seed)), new NoopRunRepository(), seed);
+        Arena a = engine.arena;
+
+        for (int placed = 0; placed < enemies; ) {
+            int gx = r.nextInt(a.cols), gy = r.nextInt(a.rows);
+            if (Math.max(Math.abs(gx - engine.px), Math.abs(gy - engine.py)) <= SAFE) continue;
+            engine.spawnEnemyAt(gx, gy, 1_000_000);
+            placed++;
+        }
+
+        for (int i = 0; i < WARMUP_TICKS && engine.alive; i++) tick(engine);
+
+        for (int i = 0; i < bullets; i++) {
+            double sx = r.nextDouble() * a.width, sy = r.nextDouble() * a.height;
+            double ang = r.nextDouble() * Math.PI * 2;
+            engine.spawnBullet(sx, sy, sx + Math.cos(ang), sy + Math.sin(ang));
+        }
+
+        if (!engine.alive) throw new IllegalStateException("scenario " + enemies + "/" + bullets + ": player died during warm-up");
+        if (engine.enemies().size() < enemies || (enemies > 0 || bullets > 0) && engine.bullets().size() == 0)
+            throw new IllegalStateException("scenario " + enemies + "/" + bullets + ": " + engine.enemies().size()
+                    + " enemies, " + engine.bullets().size() + " bullets");
+        return engine;
+    }
+
+    /** 預設地圖；敵人多的話每隻留 CELLS_PER_ENEMY 格，長寬比不變，畫面就是整張地圖 */
+    static Arena arenaFor(int enemies) {
+        Arena d = Arena.DEFAULT;
+        if ((long) enemies * CELLS_PER_ENEMY <= (long) d.cols * d.rows) return d;
+        double scale = Math.sqrt((double) enemies * CELLS_PER_ENEMY / (d.cols * d.rows));
+        int cols = (int) Math.ceil(d.cols * scale), rows = (int) Math.ceil(d.rows * scale);
+        return new Arena(cols, rows, d.cell, cols, rows, 0);
+    }
+
+    /** 用 ChaseBot 的輸入走一個 tick */
+    static void tick(GameEngine engine) {
+        int in = BOT.decide(engine);
+        engine.tick(GameEngine.SIM_DT, InputPolicy.up(in), InputPolicy.down(in), InputPolicy.left(in), InputPolicy.right(in));
+    }
+
+    /** 目前狀態的 snapshot；每次量測前 restore 回來，ChaseBot 跟引擎都是確定的，每次走的都一樣 */
+    static ByteBuffer snapshot(GameEngine engine) {
+        ByteBuffer b = ByteBuffer.allocate(4 << 20);
+        engine.writeSnapshot(b);
+        b.flip();
+        return b;
+    }
+
+    static void restore(GameEngine engine, ByteBuffer snapshot) {
+        try {
+            engine.restoreSnapshot(snapshot.duplicate());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** 從 snapshot 走 ticks 個 tick 確認玩家一路活著、場上一直有子彈，不然丟例外；走完接回 snapshot */
+    static void checkRun(GameEngine engine, ByteBuffer snapshot, int ticks, int bullets) {
+        restore(engine, snapshot);
+        for (int i = 0; i < ticks; i++) {
+            tick(engine);
+            topUpBullets(engine, bullets);
+            if (!engine.alive || engine.bullets().size() == 0)
+                throw new IllegalStateException("scenario degenerates at tick " + i + " of " + ticks
+                        + " (alive=" + engine.alive + ", bullets=" + engine.bullets().size() + ")");
+        }
+        restore(engine, snapshot);
+    }
+
+    /** 子彈打中或飛出去後補回 n 顆，讓每次量測的子彈數維持一樣 */
+    static void topUpBullets(GameEngine engine, int n) {
+        int missing = n - engine.bullets().size();
+        int w = engine.arena.width, h = engine.arena.height;
+        for (int i = 0; i < missing; i++) {
+            double sx = (i * 37) % w, sy = (i * 53) % h;
+            engine.spawnBullet(sx, sy, sx + 1, sy);
+        }
+    }
+
+    /** 走滿 trail 並帶 teammates 個隊友 */
+    static void fillTrail(GameEngine engine, int trailLen, int teammates) {
+        for (int i = 0; i < trailLen; i++) {
+            int row = (i / COLS) % ROWS;
+            int col = row % 2 == 0 ? i % COLS : COLS - 1 - i % COLS;
+            engine.pushTrail(col, row);
+        }
+        for (int i = 0; i < teammates; i++) engine.teammates.add(new GridPos(0, 0));
+    }
+}
@@ -0,0 +1,53 @@
+package game;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/** 整個 GameEngine.tick（固定 dt）：每次從同一個 snapshot 由 ChaseBot 走 TICKS 個 tick，結果是每個 tick 的時間 */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(TickBenchmark.TICKS)
+public class TickBenchmark {
+
+    /** 一次量多少 tick；敵人不會死，走太久 ChaseBot 會被包圍（setup 會檢查） */
+    static final int TICKS = 60;
+
+    @Param({"10", "100", "1000", "10000"})
+    int entities;
+
+    GameEngine engine;
+    ByteBuffer start;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = Scenarios.build(entities, entities, 42);
+        start = Scenarios.snapshot(engine);
+        Scenarios.checkRun(engine, start, TICKS, entities);
+    }
+
+    /** restore 不算進量測時間；一次 invocation 有 TICKS 個 tick，計時的額外成本可以忽略 */
+    @Setup(Level.Invocation)
+    public void rewind() {
+        Scenarios.restore(engine, start);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public GameEngine tick() {
+        for (int i = 0; i < TICKS; i++) {
+            Scenarios.tick(engine);
+            Scenarios.topUpBullets(engine, entities);
+        }
+        return engine;
+    }
+}
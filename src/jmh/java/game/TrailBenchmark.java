@@ -0,0 +1,36 @@
+package game;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** trail 滿 6000 格時的隊友跟隨 */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrailBenchmark {
+
+    @Param({"10", "100"})
+    int teammates;
+
+    GameEngine engine;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = Scenarios.build(0, 0, 42);
+        Scenarios.fillTrail(engine, 6000, teammates);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public void updateTeammatesFollow() {
+        engine.updateTeammatesFollow();
+    }
+}
@@ -0,0 +1,21 @@
+package cards;
+
+import java.util.List;
+import java.util.Random;
+
+/** 無畫面模式用：自動選卡。rng 為 null 時永遠選第一張 */
+public class AutoCardChooser implements CardChooser {
+
+    private final Random rng;
+
+    public AutoCardChooser(Random rng) {
+        this.rng = rng;
+    }
+
+    @Override
+    public Card choose(int level, List<Card> options) {
+        if (options == null || options.isEmpty()) return null;
+        if (rng == null) return options.get(0);
+        return options.get(rng.nextInt(options.size()));
+    }
+}
@@ -0,0 +1,8 @@
+package cards;
+
+import java.util.List;
+
+/** 升級時從候選卡裡選一張；回傳 null 表示不選 */
+public interface CardChooser {
+    Card choose(int level, List<Card> options);
+}
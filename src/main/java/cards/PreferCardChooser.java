@@ -0,0 +1,23 @@
+package cards;
+
+import java.util.List;
+import java.util.Random;
+
+/** 平衡測試用：有出現指定的卡就選它，沒有就隨機選一張 */
+public class PreferCardChooser implements CardChooser {
+
+    private final String preferred;
+    private final Random rng;
+
+    public PreferCardChooser(String preferred, Random rng) {
+        this.preferred = preferred;
+        this.rng = rng;
+    }
+
+    @Override
+    public Card choose(int level, List<Card> options) {
+        if (options == null || options.isEmpty()) return null;
+        for (Card c : options) if (c.name().equals(preferred)) return c;
+        return options.get(rng.nextInt(options.size()));
+    }
+}
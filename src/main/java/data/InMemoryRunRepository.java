@@ -0,0 +1,38 @@
+package data;
+
+import entities.RunRecord;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/** 存在記憶體裡，程式結束就消失 */
+public class InMemoryRunRepository implements RunRepository {
+
+    private final List<RunRecord> runs = new ArrayList<>();
+
+    @Override
+    public synchronized void saveRun(RunRecord r) {
+        runs.add(r);
+    }
+
+    @Override
+    public synchronized List<RunRecord> fetchRecentRuns(int n) {
+        List<RunRecord> out = new ArrayList<>();
+        for (int i = runs.size() - 1; i >= 0 && out.size() < n; i--) out.add(runs.get(i));
+        return out;
+    }
+
+    @Override
+    public synchronized List<RunRecord> fetchTopRuns(int difficulty, int n) {
+        List<RunRecord> out = new ArrayList<>();
+        for (RunRecord r : runs) if (r.difficulty == difficulty) out.add(r);
+        out.sort(Comparator.comparingInt((RunRecord r) -> r.score).reversed());
+        return out.size() <= n ? out : new ArrayList<>(out.subList(0, n));
+    }
+
+    public synchronized int size() { return runs.size(); }
+
+    @Override
+    public void close() {}
+}
@@ -0,0 +1,207 @@
+package data;
+
+import entities.RunRecord;
+import entities.RunStats;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 本機檔案版的紀錄：固定長度的二進位紀錄放在 memory-mapped 檔案裡，不需要 MongoDB。
+ * 記憶體裡另外維護「依時間」與「每個難度依分數」的索引，最新 N 筆 / 最高 N 筆都只讀 N 筆。
+ *
+ * 檔案格式：header 16 bytes（magic, version, count, reserved），之後每筆 32 bytes：
+ * long tsMillis, int difficulty, int level, double survivedSec, int kills, int score
+ */
+public class MappedRunRepository implements RunRepository {
+
+    private static final int MAGIC = 0x534E4B52;  // "SNKR"
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    private static final int RECORD = 32;
+    private static final int MAX_DIFF = 10;
+
+    private final FileChannel ch;
+    private MappedByteBuffer buf;
+    private int capacity;
+    private int count;
+
+    // 索引：紀錄編號
+    private int[] byTs = new int[64];
+    private final int[][] byScore = new int[MAX_DIFF + 1][];
+    private final int[] byScoreSize = new int[MAX_DIFF + 1];
+
+    public MappedRunRepository(Path file) {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            long size = ch.size();
+            boolean fresh = size < HEADER;
+            capacity = fresh ? 64 : (int) Math.max(64, (size - HEADER) / RECORD);
+            map();
+
+            if (fresh) {
+                buf.putInt(0, MAGIC);
+                buf.putInt(4, VERSION);
+                buf.putInt(8, 0);
+            } else if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+                throw new IOException("not a run store: " + file);
+            }
+            count = Math.min(buf.getInt(8), capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        for (int i = 0; i < byScore.length; i++) byScore[i] = new int[16];
+        for (int i = 0; i < count; i++) index(i);
+    }
+
+    @Override
+    public synchronized void saveRun(RunRecord r) {
+        if (count == capacity) {
+            capacity *= 2;
+            map();
+        }
+        int i = count;
+        int at = HEADER + i * RECORD;
+        buf.putLong(at, parseTs(r.ts));
+        buf.putInt(at + 8, r.difficulty);
+        buf.putInt(at + 12, r.level);
+        buf.putDouble(at + 16, r.survivedSec);
+        buf.putInt(at + 24, r.kills);
+        buf.putInt(at + 28, r.score);
+
+        // 先寫資料再更新筆數，中途當掉最多少一筆
+        count++;
+        buf.putInt(8, count);
+        index(i);
+    }
+
+    @Override
+    public synchronized List<RunRecord> fetchRecentRuns(int n) {
+        List<RunRecord> out = new ArrayList<>(Math.min(n, count));
+        for (int k = count - 1; k >= 0 && out.size() < n; k--) out.add(read(byTs[k]));
+        return out;
+    }
+
+    @Override
+    public synchronized List<RunRecord> fetchTopRuns(int difficulty, int n) {
+        if (difficulty < 0 || difficulty > MAX_DIFF) return new ArrayList<>();
+        int[] list = byScore[difficulty];
+        int size = byScoreSize[difficulty];
+        List<RunRecord> out = new ArrayList<>(Math.min(n, size));
+        for (int k = 0; k < size && out.size() < n; k++) out.add(read(list[k]));
+        return out;
+    }
+
+    /** 依分數的索引已經排好，百分位直接取位置 */
+    @Override
+    public synchronized RunStats fetchStats(int difficulty, int topN) {
+        if (difficulty < 0 || difficulty > MAX_DIFF || byScoreSize[difficulty] == 0) return RunStats.empty(difficulty);
+        int[] list = byScore[difficulty];
+        int size = byScoreSize[difficulty];
+        return new RunStats(difficulty, size, scoreOf(list[0]),
+                scoreOf(list[RunStats.percentileIndex(size, 0.50)]),
+                scoreOf(list[RunStats.percentileIndex(size, 0.90)]),
+                scoreOf(list[RunStats.percentileIndex(size, 0.99)]),
+                fetchTopRuns(difficulty, topN));
+    }
+
+    /** 每個難度的索引第一筆 */
+    @Override
+    public synchronized List<RunRecord> fetchPersonalBests() {
+        List<RunRecord> out = new ArrayList<>();
+        for (int d = 0; d <= MAX_DIFF; d++) if (byScoreSize[d] > 0) out.add(read(byScore[d][0]));
+        return out;
+    }
+
+    @Override
+    public synchronized void close() {
+        buf.force();
+        try {
+            ch.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // ===== index =====
+
+    private void index(int i) {
+        // 依時間：通常是接在最後面，只有補寫舊紀錄時才需要往前搬
+        if (i == byTs.length) byTs = Arrays.copyOf(byTs, byTs.length * 2);
+        long ts = tsOf(i);
+        int k = i;
+        while (k > 0 && tsOf(byTs[k - 1]) > ts) {
+            byTs[k] = byTs[k - 1];
+            k--;
+        }
+        byTs[k] = i;
+
+        // 每個難度依分數由高到低
+        int d = Math.max(0, Math.min(MAX_DIFF, diffOf(i)));
+        int size = byScoreSize[d];
+        if (size == byScore[d].length) byScore[d] = Arrays.copyOf(byScore[d], size * 2);
+        int[] list = byScore[d];
+        int score = scoreOf(i);
+        int pos = insertPos(list, size, score);
+        System.arraycopy(list, pos, list, pos + 1, size - pos);
+        list[pos] = i;
+        byScoreSize[d] = size + 1;
+    }
+
+    /** 第一個分數比 score 低的位置（同分的新紀錄排在後面） */
+    private int insertPos(int[] list, int size, int score) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (scoreOf(list[mid]) >= score) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // ===== record access =====
+
+    private long tsOf(int i) { return buf.getLong(HEADER + i * RECORD); }
+    private int diffOf(int i) { return buf.getInt(HEADER + i * RECORD + 8); }
+    private int scoreOf(int i) { return buf.getInt(HEADER + i * RECORD + 28); }
+
+    private RunRecord read(int i) {
+        int at = HEADER + i * RECORD;
+        return new RunRecord(
+                Instant.ofEpochMilli(buf.getLong(at)).toString(),
+                buf.getInt(at + 8),
+                buf.getInt(at + 12),
+                buf.getDouble(at + 16),
+                buf.getInt(at + 24),
+                buf.getInt(at + 28)
+        );
+    }
+
+    private void map() {
+        try {
+            buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity * RECORD);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long parseTs(String ts) {
+        try {
+            return Instant.parse(ts).toEpochMilli();
+        } catch (Exception e) {
+            return System.currentTimeMillis();
+        }
+    }
+}
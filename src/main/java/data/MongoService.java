@@ -1,44 +1,131 @@
 package data;
 
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCommandException;
 import com.mongodb.client.*;
-import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.*;
+import entities.RunOverview;
 import entities.RunRecord;
+import entities.RunStats;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
-public class MongoService implements AutoCloseable {
+/**
+ * runs collection：每筆除了 ISO 字串的 ts 之外還有 Date 型別的 at（排序用）。
+ * 索引：(difficulty, score desc) 給排行榜與統計，(at desc) 給最新 N 筆；第一次用到時建立。
+ * 查詢都帶 projection，只拉畫面要的欄位；game over 畫面要的東西（fetchOverview）一個 aggregate 查完。
+ */
+public class MongoService implements RunRepository {
+
+    private static final long STATS_TTL_MS = 30_000;
+    private static final List<Double> PERCENTILES = Arrays.asList(0.5, 0.9, 0.99);
+    private static final Bson RUN_FIELDS = Projections.fields(
+            Projections.include("ts", "difficulty", "level", "survivedSec", "kills", "score"),
+            Projections.excludeId());
 
     private final MongoClient client;
     private final MongoDatabase db;
+    private volatile boolean indexed = false;
+    private volatile boolean serverPercentile = true;  // $percentile 要 MongoDB 7.0
+    private volatile boolean serverUnion = true;       // $unionWith 要 MongoDB 4.4
+    // key：difficulty << 32 | topN；存了該難度的新紀錄就丟掉
+    private final TtlCache<Long, RunStats> statsCache = new TtlCache<>(STATS_TTL_MS);
 
     public MongoService(String uri, String dbName) {
-        this.client = MongoClients.create(uri);
+        this(MongoClientSettings.builder().applyConnectionString(new ConnectionString(uri)).build(), dbName);
+    }
+
+    /** 建 client 不會連線（在背景找伺服器），第一次查詢才會等 */
+    public MongoService(MongoClientSettings settings, String dbName) {
+        this.client = MongoClients.create(settings);
         this.db = client.getDatabase(dbName);
     }
 
+    /** 連一次伺服器（順便建好索引）；連不上回傳 false */
+    public boolean ping() {
+        try {
+            db.runCommand(new Document("ping", 1));
+            col();
+            return true;
+        } catch (RuntimeException e) {
+            System.err.println("[MongoService] ping failed: " + e.getMessage());
+            return false;
+        }
+    }
+
     private MongoCollection<Document> col() {
-        return db.getCollection("runs");
+        MongoCollection<Document> c = db.getCollection("runs");
+        if (!indexed) ensureIndexes(c);
+        return c;
+    }
+
+    /** 建索引（已經有的不會重建），舊紀錄補上 at；失敗的話下次用到再試 */
+    private synchronized void ensureIndexes(MongoCollection<Document> c) {
+        if (indexed) return;
+        c.createIndexes(Arrays.asList(
+                new IndexModel(Indexes.compoundIndex(Indexes.ascending("difficulty"), Indexes.descending("score"))),
+                new IndexModel(Indexes.descending("at"))));
+        c.updateMany(Filters.exists("at", false), Collections.singletonList(
+                Updates.set("at", new Document("$dateFromString",
+                        new Document("dateString", "$ts").append("onError", new Date(0))))));
+        indexed = true;
     }
 
-    public void saveRun(int difficulty, int level, double survivedSec, int kills, int score) {
-        Document doc = new Document()
-                .append("ts", Instant.now().toString())
-                .append("difficulty", difficulty)
-                .append("level", level)
-                .append("survivedSec", survivedSec)
-                .append("kills", kills)
-                .append("score", score);
+    @Override
+    public void saveRun(RunRecord r) {
+        col().insertOne(toDocument(r));
+        invalidateStats(Collections.singleton(r.difficulty));
+    }
+
+    @Override
+    public void saveRuns(List<RunRecord> batch) {
+        if (batch.isEmpty()) return;
+        List<Document> docs = new ArrayList<>(batch.size());
+        Set<Integer> difficulties = new HashSet<>();
+        for (RunRecord r : batch) {
+            docs.add(toDocument(r));
+            difficulties.add(r.difficulty);
+        }
+        col().insertMany(docs);
+        invalidateStats(difficulties);
+    }
 
-        col().insertOne(doc);
+    private static Document toDocument(RunRecord r) {
+        return new Document()
+                .append("ts", r.ts)
+                .append("at", toDate(r.ts))
+                .append("difficulty", r.difficulty)
+                .append("level", r.level)
+                .append("survivedSec", r.survivedSec)
+                .append("kills", r.kills)
+                .append("score", r.score);
     }
 
+    private static Date toDate(String ts) {
+        try {
+            return Date.from(Instant.parse(ts));
+        } catch (Exception e) {
+            return new Date();
+        }
+    }
+
+    @Override
     public List<RunRecord> fetchRecentRuns(int n) {
-        List<RunRecord> out = new ArrayList<>();
-        FindIterable<Document> it = col().find().sort(Sorts.descending("ts")).limit(n);
+        return toRecords(col().find().projection(RUN_FIELDS).sort(Sorts.descending("at")).limit(n));
+    }
 
+    private static List<RunRecord> toRecords(Iterable<Document> it) {
+        List<RunRecord> out = new ArrayList<>();
         for (Document d : it) {
             out.add(new RunRecord(
                     d.getString("ts"),
@@ -52,6 +139,172 @@ public class MongoService implements AutoCloseable {
         return out;
     }
 
+    @Override
+    public List<RunRecord> fetchTopRuns(int difficulty, int n) {
+        return toRecords(col().find(Filters.eq("difficulty", difficulty))
+                .projection(RUN_FIELDS).sort(Sorts.descending("score")).limit(n));
+    }
+
+    /** 一次 aggregate 拿齊，STATS_TTL_MS 內重複查同一個難度不再連線 */
+    @Override
+    public RunStats fetchStats(int difficulty, int topN) {
+        return statsCache.get(statsKey(difficulty, topN), k -> queryStats(difficulty, topN));
+    }
+
+    private RunStats queryStats(int difficulty, int topN) {
+        if (serverPercentile) {
+            try {
+                return aggregate(statsPipeline(difficulty, topN, true), difficulty, topN).stats;
+            } catch (MongoCommandException e) {
+                System.err.println("[MongoService] $percentile unsupported, falling back: " + e.getErrorMessage());
+                serverPercentile = false;
+            }
+        }
+        return aggregate(statsPipeline(difficulty, topN, false), difficulty, topN).stats;
+    }
+
+    /** $sort 走 (difficulty, score desc) 索引，每個難度取第一筆 */
+    @Override
+    public List<RunRecord> fetchPersonalBests() {
+        return aggregate(bestsPipeline(), -1, 0).bests;
+    }
+
+    /**
+     * game over 用：統計、最新 recentN 筆、個人最佳用 $unionWith（MongoDB 4.4）接成同一個 aggregate，一次來回；
+     * 統計還在快取裡就只查另外兩樣（也是一次）。伺服器太舊就分開查。
+     */
+    @Override
+    public RunOverview fetchOverview(int difficulty, int topN, int recentN) {
+        if (!serverUnion) {
+            return new RunOverview(fetchRecentRuns(recentN), fetchStats(difficulty, topN), fetchPersonalBests());
+        }
+        RunOverview[] queried = new RunOverview[1];
+        RunStats stats;
+        try {
+            stats = statsCache.get(statsKey(difficulty, topN), k -> {
+                queried[0] = queryOverview(difficulty, topN, recentN);
+                return queried[0].stats;
+            });
+            if (queried[0] != null) return queried[0];
+
+            List<Bson> p = new ArrayList<>(recentPipeline(recentN));
+            p.add(Aggregates.unionWith("runs", bestsPipeline()));
+            RunOverview o = aggregate(p, difficulty, topN);
+            o.stats = stats;
+            return o;
+        } catch (MongoCommandException e) {
+            System.err.println("[MongoService] $unionWith unsupported, querying separately: " + e.getErrorMessage());
+            serverUnion = false;
+            return fetchOverview(difficulty, topN, recentN);
+        }
+    }
+
+    /** 統計 + 最新 + 個人最佳；7.0 前的伺服器第一次會因為 $percentile 失敗，改掉再查一次 */
+    private RunOverview queryOverview(int difficulty, int topN, int recentN) {
+        while (true) {
+            boolean percentile = serverPercentile;
+            List<Bson> p = new ArrayList<>(statsPipeline(difficulty, topN, percentile));
+            p.add(Aggregates.unionWith("runs", recentPipeline(recentN)));
+            p.add(Aggregates.unionWith("runs", bestsPipeline()));
+            try {
+                return aggregate(p, difficulty, topN);
+            } catch (MongoCommandException e) {
+                if (!percentile) throw e;
+                System.err.println("[MongoService] $percentile unsupported, falling back: " + e.getErrorMessage());
+                serverPercentile = false;
+            }
+        }
+    }
+
+    // ===== pipelines：每一段輸出一份文件，aggregate() 依欄位認 =====
+
+    /**
+     * $match + $sort 走 (difficulty, score desc) 索引，$facet 把排好的結果分給前 topN 名與摘要。
+     * percentile = false（7.0 前沒有 $percentile）：摘要把排好的分數收成陣列，在伺服器上依 nearest-rank 取位置，
+     * 回傳的還是只有筆數、最高分與三個百分位。
+     */
+    private static List<Bson> statsPipeline(int difficulty, int topN, boolean percentile) {
+        List<Bson> summary = percentile
+                ? Collections.singletonList(Aggregates.group(null,
+                        Accumulators.sum("count", 1),
+                        Accumulators.max("best", "$score"),
+                        Accumulators.percentile("p", "$score", PERCENTILES, QuantileMethod.approximate())))
+                : Arrays.asList(
+                        Aggregates.group(null, Accumulators.push("scores", "$score")),
+                        Aggregates.project(new Document("_id", 0)
+                                .append("count", new Document("$size", "$scores"))
+                                .append("best", new Document("$arrayElemAt", Arrays.asList("$scores", 0)))
+                                .append("p", percentileElems())));
+        return Arrays.asList(
+                Aggregates.match(Filters.eq("difficulty", difficulty)),
+                Aggregates.sort(Sorts.descending("score")),
+                Aggregates.facet(
+                        new Facet("top", Aggregates.limit(Math.max(1, topN)), Aggregates.project(RUN_FIELDS)),
+                        new Facet("summary", summary)));
+    }
+
+    /** 由高到低排好的 $scores 裡每個百分位的值；位置同 RunStats.percentileIndex：n - 1 - max(0, ceil(q * n) - 1) */
+    private static List<Document> percentileElems() {
+        Document n = new Document("$size", "$scores");
+        List<Document> out = new ArrayList<>();
+        for (double q : PERCENTILES) {
+            Document ascending = new Document("$max", Arrays.asList(0, new Document("$subtract", Arrays.asList(
+                    new Document("$ceil", new Document("$multiply", Arrays.asList(q, n))), 1))));
+            Document index = new Document("$toInt", new Document("$subtract", Arrays.asList(
+                    new Document("$subtract", Arrays.asList(n, 1)), ascending)));
+            out.add(new Document("$arrayElemAt", Arrays.asList("$scores", index)));
+        }
+        return out;
+    }
+
+    /** 走 at 索引取最新 n 筆，收成一份 { recent: [...] } */
+    private static List<Bson> recentPipeline(int n) {
+        return Arrays.asList(
+                Aggregates.sort(Sorts.descending("at")),
+                Aggregates.limit(Math.max(1, n)),
+                Aggregates.project(RUN_FIELDS),
+                Aggregates.group(null, Accumulators.push("recent", "$$ROOT")));
+    }
+
+    /** 每個難度分數最高的一筆，收成一份 { bests: [...] }（難度由小到大） */
+    private static List<Bson> bestsPipeline() {
+        return Arrays.asList(
+                Aggregates.sort(Sorts.orderBy(Sorts.ascending("difficulty"), Sorts.descending("score"))),
+                Aggregates.project(RUN_FIELDS),
+                Aggregates.group("$difficulty", Accumulators.first("run", "$$ROOT")),
+                Aggregates.sort(Sorts.ascending("_id")),
+                Aggregates.group(null, Accumulators.push("bests", "$run")));
+    }
+
+    private RunOverview aggregate(List<Bson> pipeline, int difficulty, int topN) {
+        RunOverview o = new RunOverview(new ArrayList<>(), RunStats.empty(difficulty), new ArrayList<>());
+        for (Document d : col().aggregate(pipeline)) {
+            if (d.containsKey("summary")) o.stats = toStats(d, difficulty, topN);
+            else if (d.containsKey("recent")) o.recent = toRecords(d.getList("recent", Document.class));
+            else if (d.containsKey("bests")) o.bests = toRecords(d.getList("bests", Document.class));
+        }
+        return o;
+    }
+
+    private static RunStats toStats(Document r, int difficulty, int topN) {
+        List<Document> s = r.getList("summary", Document.class);
+        if (s == null || s.isEmpty()) return RunStats.empty(difficulty);
+        List<RunRecord> top = toRecords(r.getList("top", Document.class));
+        if (top.size() > topN) top = top.subList(0, topN);  // $limit 至少要 1
+        Document sum = s.get(0);
+        List<Number> p = sum.getList("p", Number.class);
+        return new RunStats(difficulty, sum.get("count", Number.class).intValue(), sum.get("best", Number.class).intValue(),
+                p.get(0).intValue(), p.get(1).intValue(), p.get(2).intValue(), top);
+    }
+
+    private static long statsKey(int difficulty, int topN) {
+        return (long) difficulty << 32 | topN;
+    }
+
+    private void invalidateStats(Set<Integer> difficulties) {
+        statsCache.invalidateIf(k -> difficulties.contains((int) (k >>> 32)));
+    }
+
     @Override
     public void close() {
         client.close();
@@ -0,0 +1,22 @@
+package data;
+
+import entities.RunRecord;
+
+import java.util.Collections;
+import java.util.List;
+
+/** 什麼都不存（跑模擬 / 量測用） */
+public class NoopRunRepository implements RunRepository {
+
+    @Override
+    public void saveRun(RunRecord r) {}
+
+    @Override
+    public List<RunRecord> fetchRecentRuns(int n) { return Collections.emptyList(); }
+
+    @Override
+    public List<RunRecord> fetchTopRuns(int difficulty, int n) { return Collections.emptyList(); }
+
+    @Override
+    public void close() {}
+}
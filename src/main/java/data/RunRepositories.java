@@ -0,0 +1,132 @@
+package data;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import entities.RunOverview;
+import entities.RunRecord;
+import entities.RunStats;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 依設定選擇紀錄的存放位置（系統屬性優先，其次環境變數）：
+ * snake.store / SNAKE_STORE = local（預設，本機檔案 ~/.snakegame/runs.dat，可用 snake.store.file 改路徑）或 mongo
+ * snake.mongo.uri / SNAKE_MONGO_URI（預設 mongodb://localhost:27017）、snake.mongo.db / SNAKE_MONGO_DB、
+ * snake.mongo.pool / SNAKE_MONGO_POOL（連線數上限）、snake.mongo.timeoutMs / SNAKE_MONGO_TIMEOUT_MS（找不到伺服器多久放棄）。
+ * URI 裡有寫的連線設定以 URI 為準。
+ */
+public class RunRepositories {
+
+    public static final String MONGO_URI = "mongodb://localhost:27017";
+    public static final String MONGO_DB = "snakeGame";
+    private static final int MONGO_POOL = 4;          // 一局只有幾次存取，不用多
+    private static final int MONGO_TIMEOUT_MS = 2000;  // 連不上就早點放棄，改寫 journal
+
+    private static RunRepository shared;
+    private static CompletableFuture<RunWriteBehind> store;  // shared() 背後真正的那份，在背景建立
+
+    public static RunRepository open() {
+        if (setting("snake.store", "SNAKE_STORE", "local").equalsIgnoreCase("mongo")) {
+            return new MongoService(mongoSettings(), setting("snake.mongo.db", "SNAKE_MONGO_DB", MONGO_DB));
+        }
+        String file = System.getProperty("snake.store.file");
+        Path path = file != null ? Paths.get(file)
+                : Paths.get(System.getProperty("user.home"), ".snakegame", "runs.dat");
+        return new MappedRunRepository(path);
+    }
+
+    /**
+     * 整個程式共用一份（MongoClient 與連線池、write-behind 執行緒都只有一套），重新開始一場不會重建。
+     * 馬上回傳，真正的 repository 在背景建立，第一次存取才會等（存取都在背景執行緒上，不會卡 EDT）；
+     * 建不起來就改成離線（只寫 journal），不會讓之後的存取失敗。close() 不做事，程式結束時才真的關。
+     */
+    public static synchronized RunRepository shared() {
+        if (shared == null) {
+            store = new CompletableFuture<>();
+            Thread t = new Thread(() -> {
+                long t0 = System.nanoTime();
+                RunRepository target = null;
+                RunWriteBehind s;
+                try {
+                    target = open();
+                    s = new RunWriteBehind(target, RunWriteBehind.defaultJournal());
+                } catch (RuntimeException | LinkageError e) {
+                    // 開不起來（例如檔案壞了、classpath 上沒有 MongoDB driver）：離線模式，紀錄只寫 journal，下次能開的時候補寫
+                    System.err.println("[RunRepositories] store unavailable, offline for this session: " + e);
+                    target = null;
+                    s = RunWriteBehind.offline(RunWriteBehind.defaultJournal());
+                }
+                Runtime.getRuntime().addShutdownHook(new Thread(s::close, "run-store-close"));
+                store.complete(s);
+
+                // MongoDB：先連一次（順便建索引），第一場 game over 時連線已經好了
+                String state = target == null ? "offline" : "ready";
+                if (target instanceof MongoService) {
+                    state = ((MongoService) target).ping() ? "connected"
+                            : "offline (runs go to the journal until MongoDB is back)";
+                }
+                if (Boolean.getBoolean("snake.startupLog"))
+                    System.out.printf("[RunRepositories] store %s in %.0f ms%n", state, (System.nanoTime() - t0) / 1e6);
+            }, "run-store-warmup");
+            t.setDaemon(true);
+            t.start();
+            shared = new Shared();
+        }
+        return shared;
+    }
+
+    /** 啟動時呼叫：在背景開始準備 shared()，不等它 */
+    public static void warmUp() {
+        shared();
+    }
+
+    /** shared() 背後的 repository 建好了沒（給啟動時間的 log 用） */
+    public static synchronized boolean sharedReady() {
+        return store != null && store.isDone();
+    }
+
+    private static MongoClientSettings mongoSettings() {
+        ConnectionString cs = new ConnectionString(setting("snake.mongo.uri", "SNAKE_MONGO_URI", MONGO_URI));
+        int pool = Integer.parseInt(setting("snake.mongo.pool", "SNAKE_MONGO_POOL", String.valueOf(MONGO_POOL)));
+        int timeout = Integer.parseInt(setting("snake.mongo.timeoutMs", "SNAKE_MONGO_TIMEOUT_MS", String.valueOf(MONGO_TIMEOUT_MS)));
+        return MongoClientSettings.builder()
+                .applyConnectionString(cs)
+                .applyToConnectionPoolSettings(b -> {
+                    if (cs.getMaxConnectionPoolSize() == null) b.maxSize(pool);
+                })
+                .applyToClusterSettings(b -> {
+                    if (cs.getServerSelectionTimeout() == null) b.serverSelectionTimeout(timeout, TimeUnit.MILLISECONDS);
+                })
+                .applyToSocketSettings(b -> {
+                    if (cs.getConnectTimeout() == null) b.connectTimeout(timeout, TimeUnit.MILLISECONDS);
+                })
+                .build();
+    }
+
+    private static String setting(String property, String env, String def) {
+        String v = System.getProperty(property);
+        if (v == null) v = System.getenv(env);
+        return v != null && !v.isEmpty() ? v : def;
+    }
+
+    /** 共用的那份：每一場結束時 GameEngine 會 close，這裡不關 */
+    private static final class Shared implements RunRepository {
+        private static RunWriteBehind target() { return store.join(); }
+
+        @Override public void saveRun(RunRecord r) { target().saveRun(r); }
+        @Override public void saveRuns(List<RunRecord> batch) { target().saveRuns(batch); }
+        @Override public List<RunRecord> fetchRecentRuns(int n) { return target().fetchRecentRuns(n); }
+        @Override public List<RunRecord> fetchTopRuns(int difficulty, int n) { return target().fetchTopRuns(difficulty, n); }
+        @Override public void fetchRecentRunsAsync(int n, Consumer<List<RunRecord>> done) { target().fetchRecentRunsAsync(n, done); }
+        @Override public RunStats fetchStats(int difficulty, int topN) { return target().fetchStats(difficulty, topN); }
+        @Override public List<RunRecord> fetchPersonalBests() { return target().fetchPersonalBests(); }
+        @Override public RunOverview fetchOverview(int difficulty, int topN, int recentN) { return target().fetchOverview(difficulty, topN, recentN); }
+        @Override public void fetchOverviewAsync(int difficulty, int topN, int recentN, Consumer<RunOverview> done) { target().fetchOverviewAsync(difficulty, topN, recentN, done); }
+        @Override public void close() {}
+    }
+}
@@ -0,0 +1,61 @@
+package data;
+
+import entities.RunOverview;
+import entities.RunRecord;
+import entities.RunStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/** 遊戲紀錄的存放位置（本機檔案、MongoDB、記憶體或不存） */
+public interface RunRepository extends AutoCloseable {
+
+    void saveRun(RunRecord r);
+
+    /** 一次存多筆（預設一筆一筆存） */
+    default void saveRuns(List<RunRecord> batch) {
+        for (RunRecord r : batch) saveRun(r);
+    }
+
+    /** 最新的 n 筆，新的在前 */
+    List<RunRecord> fetchRecentRuns(int n);
+
+    /** 某個難度分數最高的 n 筆，高分在前 */
+    List<RunRecord> fetchTopRuns(int difficulty, int n);
+
+    /** 非同步版本；預設直接在呼叫端執行 */
+    default void fetchRecentRunsAsync(int n, Consumer<List<RunRecord>> done) {
+        done.accept(fetchRecentRuns(n));
+    }
+
+    /** 某個難度的筆數、最高分、百分位與前 topN 名；預設把整個難度讀出來算，有索引的實作要覆寫 */
+    default RunStats fetchStats(int difficulty, int topN) {
+        return RunStats.fromSorted(difficulty, fetchTopRuns(difficulty, Integer.MAX_VALUE), topN);
+    }
+
+    /** 每個難度分數最高的一筆（個人最佳），難度由小到大；預設把全部讀出來挑 */
+    default List<RunRecord> fetchPersonalBests() {
+        Map<Integer, RunRecord> best = new TreeMap<>();
+        for (RunRecord r : fetchRecentRuns(Integer.MAX_VALUE)) {
+            RunRecord b = best.get(r.difficulty);
+            if (b == null || r.score >= b.score) best.put(r.difficulty, r);  // 同分取較早的
+        }
+        return new ArrayList<>(best.values());
+    }
+
+    /** game over 畫面要的全部資料；預設分開查，遠端的實作要一次來回查完 */
+    default RunOverview fetchOverview(int difficulty, int topN, int recentN) {
+        return new RunOverview(fetchRecentRuns(recentN), fetchStats(difficulty, topN), fetchPersonalBests());
+    }
+
+    /** 非同步版本；預設直接在呼叫端執行 */
+    default void fetchOverviewAsync(int difficulty, int topN, int recentN, Consumer<RunOverview> done) {
+        done.accept(fetchOverview(difficulty, topN, recentN));
+    }
+
+    @Override
+    void close();
+}
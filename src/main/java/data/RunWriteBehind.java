@@ -0,0 +1,330 @@
+package data;
+
+import entities.RunOverview;
+import entities.RunRecord;
+import entities.RunStats;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * 包在真正的 RunRepository 外面：存檔只丟進佇列，由背景執行緒批次寫入（saveRuns）。
+ * 寫入失敗會退避重試，還是不行就先寫到本機 journal 檔，下次啟動或連線恢復時再補寫。
+ * fetchRecentRuns 直接回傳快取，不會卡住呼叫端（Swing EDT）。
+ */
+public class RunWriteBehind implements RunRepository {
+
+    private static final int BATCH_MAX = 64;
+    private static final int RETRIES = 3;
+    private static final long BACKOFF_MS = 200;
+    private static final int CACHE_N = 32;
+    private static final long CLOSE_WAIT_MS = 5000;  // 等 worker 把手上那批寫完（或寫進 journal）
+    // 只用來叫醒 worker（不用 interrupt，避免打斷正在進行的資料庫呼叫）
+    private static final RunRecord WAKE = new RunRecord("", 0, 0, 0, 0, 0);
+
+    private final RunRepository target;
+    private final Path journal;
+    private final boolean online;  // false：沒有可用的存放位置，紀錄只寫 journal
+    private final LinkedBlockingQueue<RunRecord> pending = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    // worker 正在寫的那批；寫進資料庫或 journal 的一方先 getAndSet / compareAndSet 拿走，同一批只處理一次
+    private final AtomicReference<List<RunRecord>> inFlight = new AtomicReference<>();
+
+    private volatile boolean running = true;
+    private volatile List<RunRecord> cache = Collections.emptyList();
+    private volatile int fetchN;
+    private volatile Consumer<List<RunRecord>> fetchDone;
+    private volatile int overviewDifficulty, overviewTopN, overviewN;
+    private volatile Consumer<RunOverview> overviewDone;
+
+    public RunWriteBehind(RunRepository target, Path journal) {
+        this(target, journal, true);
+    }
+
+    /** 離線模式（存放位置開不起來）：紀錄只寫 journal，下次啟動再補寫；查詢只看得到這次存的 */
+    public static RunWriteBehind offline(Path journal) {
+        return new RunWriteBehind(new NoopRunRepository(), journal, false);
+    }
+
+    private RunWriteBehind(RunRepository target, Path journal, boolean online) {
+        this.target = target;
+        this.journal = journal;
+        this.online = online;
+        this.worker = new Thread(this::loop, "run-write-behind");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /** ~/.snakegame/runs.journal */
+    public static Path defaultJournal() {
+        return Paths.get(System.getProperty("user.home"), ".snakegame", "runs.journal");
+    }
+
+    @Override
+    public void saveRun(RunRecord r) {
+        pending.offer(r);
+
+        // 先放進快取，game over 畫面馬上看得到這一場
+        List<RunRecord> c = new ArrayList<>(Math.min(cache.size() + 1, CACHE_N));
+        c.add(r);
+        for (RunRecord old : cache) {
+            if (c.size() >= CACHE_N) break;
+            c.add(old);
+        }
+        cache = c;
+    }
+
+    @Override
+    public List<RunRecord> fetchRecentRuns(int n) {
+        List<RunRecord> c = cache;
+        return c.size() <= n ? c : c.subList(0, n);
+    }
+
+    /** 直接查底層（會阻塞），還在佇列裡的紀錄不算 */
+    @Override
+    public List<RunRecord> fetchTopRuns(int difficulty, int n) {
+        return target.fetchTopRuns(difficulty, n);
+    }
+
+    /** 直接查底層（會阻塞），還在佇列裡的紀錄不算 */
+    @Override
+    public RunStats fetchStats(int difficulty, int topN) {
+        return target.fetchStats(difficulty, topN);
+    }
+
+    /** 直接查底層（會阻塞），還在佇列裡的紀錄不算 */
+    @Override
+    public List<RunRecord> fetchPersonalBests() {
+        return target.fetchPersonalBests();
+    }
+
+    /**
+     * 跟 fetchRecentRunsAsync 一樣先寫完佇列再查（底層一次查完），順便更新最新紀錄的快取。
+     * 查詢失敗時 recent 用快取、stats 是 null、bests 是空的。
+     */
+    @Override
+    public void fetchOverviewAsync(int difficulty, int topN, int recentN, Consumer<RunOverview> done) {
+        overviewDifficulty = difficulty;
+        overviewTopN = topN;
+        overviewN = recentN;
+        overviewDone = done;
+        pending.offer(WAKE);
+    }
+
+    /** 在背景先把佇列寫完再查詢，查到後呼叫 done（在背景執行緒上） */
+    @Override
+    public void fetchRecentRunsAsync(int n, Consumer<List<RunRecord>> done) {
+        fetchN = n;
+        fetchDone = done;
+        pending.offer(WAKE);
+    }
+
+    /**
+     * worker 不再重試：手上那批再試一次，失敗就寫進 journal。等它做完（最多 CLOSE_WAIT_MS）才關 target；
+     * 還卡在資料庫呼叫裡的話，那一批由這裡寫進 journal（萬一之後那次呼叫其實成功了，會多存一筆，但不會掉）。
+     */
+    @Override
+    public void close() {
+        running = false;
+        pending.offer(WAKE);
+        try {
+            worker.join(CLOSE_WAIT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // 沒寫完的先記到 journal，下次啟動再補
+        List<RunRecord> left = new ArrayList<>();
+        List<RunRecord> stuck = inFlight.getAndSet(null);
+        if (stuck != null) {
+            System.err.println("[RunWriteBehind] worker still saving " + stuck.size() + " run(s), journaling them");
+            left.addAll(stuck);
+        }
+        pending.drainTo(left);
+        left.removeIf(r -> r == WAKE);
+        if (!left.isEmpty()) appendJournal(left);
+        target.close();
+    }
+
+    // ===== worker =====
+
+    private void loop() {
+        if (online) {
+            replayJournal();
+            refreshCache(CACHE_N);
+        }
+
+        while (running) {
+            List<RunRecord> batch = new ArrayList<>();  // 每批一個新的 list：close 可能拿走還在寫的那批
+            try {
+                RunRecord first = pending.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    pending.drainTo(batch, BATCH_MAX - 1);
+                    batch.removeIf(r -> r == WAKE);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (!batch.isEmpty()) {
+                if (!online) appendJournal(batch);
+                else if (write(batch, RETRIES) && Files.exists(journal)) replayJournal();
+            }
+
+            Consumer<List<RunRecord>> done = fetchDone;
+            if (done != null && pending.isEmpty()) {
+                fetchDone = null;
+                done.accept(refreshCache(fetchN));
+            }
+            Consumer<RunOverview> overview = overviewDone;
+            if (overview != null && pending.isEmpty()) {
+                overviewDone = null;
+                overview.accept(refreshOverview(overviewDifficulty, overviewTopN, overviewN));
+            }
+        }
+    }
+
+    /** 退避重試，全部失敗（或要關了）就寫進 journal；回傳是否寫進資料庫 */
+    private boolean write(List<RunRecord> batch, int retries) {
+        inFlight.set(batch);
+        long backoff = BACKOFF_MS;
+        for (int attempt = 1; attempt <= retries; attempt++) {
+            try {
+                target.saveRuns(batch);
+                if (!inFlight.compareAndSet(batch, null))
+                    System.err.println("[RunWriteBehind] late save of " + batch.size() + " run(s) already journaled by close");
+                return true;
+            } catch (Exception ex) {
+                System.err.println("[RunWriteBehind] save failed (" + attempt + "/" + retries + "): " + ex.getMessage());
+                if (attempt == retries || !running) break;
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                backoff *= 2;
+            }
+        }
+        if (inFlight.compareAndSet(batch, null)) appendJournal(batch);  // close 已經拿走的話它會寫
+        return false;
+    }
+
+    private RunOverview refreshOverview(int difficulty, int topN, int n) {
+        if (!online) return new RunOverview(fetchRecentRuns(n), null, Collections.emptyList());
+        try {
+            RunOverview o = target.fetchOverview(difficulty, topN, Math.max(n, CACHE_N));
+            cache = o.recent;
+            o.recent = fetchRecentRuns(n);
+            return o;
+        } catch (Exception ex) {
+            System.err.println("[RunWriteBehind] overview failed, using cache: " + ex.getMessage());
+            return new RunOverview(fetchRecentRuns(n), null, Collections.emptyList());
+        }
+    }
+
+    private List<RunRecord> refreshCache(int n) {
+        if (!online) return fetchRecentRuns(n);
+        try {
+            List<RunRecord> fresh = target.fetchRecentRuns(Math.max(n, CACHE_N));
+            cache = fresh;
+        } catch (Exception ex) {
+            System.err.println("[RunWriteBehind] fetch failed, using cache: " + ex.getMessage());
+        }
+        return fetchRecentRuns(n);
+    }
+
+    // ===== journal：一行一筆，tab 分隔 =====
+
+    private synchronized void appendJournal(List<RunRecord> batch) {
+        try {
+            Files.createDirectories(journal.getParent());
+            try (BufferedWriter w = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (RunRecord r : batch) {
+                    w.write(r.ts + "\t" + r.difficulty + "\t" + r.level + "\t" + r.survivedSec
+                            + "\t" + r.kills + "\t" + r.score);
+                    w.newLine();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** 補寫 journal 裡的紀錄（不重試，失敗就寫回 journal 等下次） */
+    private void replayJournal() {
+        List<RunRecord> runs = takeJournal();
+        if (!runs.isEmpty()) write(runs, 1);
+    }
+
+    /**
+     * 讀出 journal 全部內容並刪檔；資料庫呼叫不在鎖裡做。
+     * 讀不懂的行（例如當掉時只寫了一半的最後一行）移到 runs.journal.bad，不會每次啟動都重讀。
+     */
+    private synchronized List<RunRecord> takeJournal() {
+        List<RunRecord> runs = new ArrayList<>();
+        if (!Files.exists(journal)) return runs;
+        List<String> bad = new ArrayList<>();
+        try {
+            String text = new String(Files.readAllBytes(journal), StandardCharsets.UTF_8);
+            String[] lines = text.split("\r?\n", -1);
+            // 最後一段後面沒有換行：寫到一半就停了，就算剛好讀得懂也不能信
+            for (int k = 0; k < lines.length; k++) {
+                if (lines[k].isEmpty()) continue;
+                RunRecord r = k < lines.length - 1 ? parseJournalLine(lines[k]) : null;
+                if (r != null) runs.add(r);
+                else bad.add(lines[k]);
+            }
+        } catch (IOException ex) {
+            System.err.println("[RunWriteBehind] journal unreadable, moving it aside: " + ex.getMessage());
+            try {
+                Files.move(journal, badJournal(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return runs;
+        }
+
+        try {
+            if (!bad.isEmpty()) {
+                System.err.println("[RunWriteBehind] skipped " + bad.size() + " bad journal line(s), kept in " + badJournal());
+                Files.write(badJournal(), bad, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            Files.delete(journal);
+        } catch (IOException ex) {
+            // 刪不掉的話下次會再讀到同樣的紀錄：這次就先不補寫
+            System.err.println("[RunWriteBehind] cannot remove journal: " + ex.getMessage());
+            runs.clear();
+        }
+        return runs;
+    }
+
+    private static RunRecord parseJournalLine(String line) {
+        String[] f = line.split("\t");
+        if (f.length != 6) return null;
+        try {
+            return new RunRecord(f[0], Integer.parseInt(f[1]), Integer.parseInt(f[2]),
+                    Double.parseDouble(f[3]), Integer.parseInt(f[4]), Integer.parseInt(f[5]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Path badJournal() {
+        return journal.resolveSibling(journal.getFileName() + ".bad");
+    }
+}
@@ -0,0 +1,53 @@
+package data;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 很小的過期快取：同一個 key 在 ttlMs 內只查一次。
+ * 給資料庫查詢用，筆數很少，過期的項目在下次 get 同一個 key 時才換掉。
+ */
+class TtlCache<K, V> {
+
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlNs;
+    private final Map<K, Entry<V>> map = new HashMap<>();
+    private long generation = 0;  // invalidate 一次加一，查詢途中被 invalidate 的結果不放進來
+
+    TtlCache(long ttlMs) {
+        this.ttlNs = ttlMs * 1_000_000L;
+    }
+
+    /** 沒有或過期就呼叫 load（不在鎖裡，兩條執行緒同時 miss 會各查一次） */
+    V get(K key, Function<K, V> load) {
+        long now = System.nanoTime();
+        long gen;
+        synchronized (this) {
+            Entry<V> e = map.get(key);
+            if (e != null && now - e.expiresAt < 0) return e.value;
+            gen = generation;
+        }
+        V v = load.apply(key);
+        synchronized (this) {
+            if (gen == generation) map.put(key, new Entry<>(v, now + ttlNs));
+        }
+        return v;
+    }
+
+    /** 資料變了（例如存了一筆新的）就丟掉 */
+    synchronized void invalidateIf(Predicate<K> stale) {
+        map.keySet().removeIf(stale);
+        generation++;
+    }
+}
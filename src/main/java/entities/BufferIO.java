@@ -0,0 +1,33 @@
+package entities;
+
+import java.nio.ByteBuffer;
+
+/**
+ * snapshot 用：整個陣列一次寫進 / 讀出 ByteBuffer，並把 position 往後移。
+ * buffer 用 native（little-endian）順序時就是單純的記憶體複製。
+ * 空間不夠一樣丟 BufferOverflowException。
+ */
+public final class BufferIO {
+
+    private BufferIO() {}
+
+    public static void putInts(ByteBuffer b, int[] a, int from, int n) {
+        b.asIntBuffer().put(a, from, n);
+        b.position(b.position() + n * Integer.BYTES);
+    }
+
+    public static void getInts(ByteBuffer b, int[] a, int from, int n) {
+        b.asIntBuffer().get(a, from, n);
+        b.position(b.position() + n * Integer.BYTES);
+    }
+
+    public static void putDoubles(ByteBuffer b, double[] a, int n) {
+        b.asDoubleBuffer().put(a, 0, n);
+        b.position(b.position() + n * Double.BYTES);
+    }
+
+    public static void getDoubles(ByteBuffer b, double[] a, int n) {
+        b.asDoubleBuffer().get(a, 0, n);
+        b.position(b.position() + n * Double.BYTES);
+    }
+}
@@ -0,0 +1,107 @@
+package entities;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 子彈：structure-of-arrays，刪除時用最後一顆補洞（swap-remove）。
+ * 容量只在不夠時加倍，穩定狀態下不配置記憶體。
+ * prevX / prevY 是上一個模擬步的位置，畫面用來內插。
+ * target 是鎖定的敵人 handle（EnemyPool.handle），retarget 是距離下次重新找目標的秒數。
+ */
+public class BulletPool implements BulletView {
+    public double[] x, y, vx, vy;
+    public double[] prevX, prevY;
+    public int[] damage;
+    public int[] target;
+    public double[] retarget;
+    private int size = 0;
+
+    public BulletPool(int capacity) {
+        x = new double[capacity];
+        y = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        prevX = new double[capacity];
+        prevY = new double[capacity];
+        damage = new int[capacity];
+        target = new int[capacity];
+        retarget = new double[capacity];
+    }
+
+    public int add(double x, double y, double vx, double vy, int damage) {
+        if (size == this.x.length) grow();
+        int i = size++;
+        this.x[i] = x; this.y[i] = y;
+        this.vx[i] = vx; this.vy[i] = vy;
+        this.prevX[i] = x; this.prevY[i] = y;
+        this.damage[i] = damage;
+        this.target[i] = -1;
+        this.retarget[i] = 0;
+        return i;
+    }
+
+    /** 移除 i，最後一顆搬到 i */
+    public void removeAt(int i) {
+        int last = --size;
+        if (i != last) {
+            x[i] = x[last]; y[i] = y[last];
+            vx[i] = vx[last]; vy[i] = vy[last];
+            prevX[i] = prevX[last]; prevY[i] = prevY[last];
+            damage[i] = damage[last];
+            target[i] = target[last]; retarget[i] = retarget[last];
+        }
+    }
+
+    public void clear() { size = 0; }
+
+    /** snapshot：每個欄位整段寫，依 slot 順序 */
+    public void write(ByteBuffer b) {
+        b.putInt(size);
+        BufferIO.putDoubles(b, x, size);
+        BufferIO.putDoubles(b, y, size);
+        BufferIO.putDoubles(b, vx, size);
+        BufferIO.putDoubles(b, vy, size);
+        BufferIO.putDoubles(b, prevX, size);
+        BufferIO.putDoubles(b, prevY, size);
+        BufferIO.putDoubles(b, retarget, size);
+        BufferIO.putInts(b, damage, 0, size);
+        BufferIO.putInts(b, target, 0, size);
+    }
+
+    /** 讀回 write 寫的內容，取代目前所有子彈 */
+    public void read(ByteBuffer b) {
+        size = 0;
+        int n = b.getInt();
+        while (x.length < n) grow();
+        BufferIO.getDoubles(b, x, n);
+        BufferIO.getDoubles(b, y, n);
+        BufferIO.getDoubles(b, vx, n);
+        BufferIO.getDoubles(b, vy, n);
+        BufferIO.getDoubles(b, prevX, n);
+        BufferIO.getDoubles(b, prevY, n);
+        BufferIO.getDoubles(b, retarget, n);
+        BufferIO.getInts(b, damage, 0, n);
+        BufferIO.getInts(b, target, 0, n);
+        size = n;
+    }
+
+    private void grow() {
+        int n = x.length * 2;
+        x = Arrays.copyOf(x, n);
+        y = Arrays.copyOf(y, n);
+        vx = Arrays.copyOf(vx, n);
+        vy = Arrays.copyOf(vy, n);
+        prevX = Arrays.copyOf(prevX, n);
+        prevY = Arrays.copyOf(prevY, n);
+        damage = Arrays.copyOf(damage, n);
+        target = Arrays.copyOf(target, n);
+        retarget = Arrays.copyOf(retarget, n);
+    }
+
+    @Override public int size() { return size; }
+    @Override public double x(int i) { return x[i]; }
+    @Override public double y(int i) { return y[i]; }
+    @Override public double prevX(int i) { return prevX[i]; }
+    @Override public double prevY(int i) { return prevY[i]; }
+}
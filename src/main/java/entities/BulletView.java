@@ -0,0 +1,11 @@
+package entities;
+
+/** 子彈池的唯讀視圖（給畫面用） */
+public interface BulletView {
+    int size();
+    double x(int i);
+    double y(int i);
+    /** 上一個模擬步的位置 */
+    double prevX(int i);
+    double prevY(int i);
+}
@@ -0,0 +1,157 @@
+package entities;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 敵人：structure-of-arrays，刪除時用最後一隻補洞（swap-remove）。
+ * 容量只在不夠時加倍，穩定狀態下不配置記憶體。
+ *
+ * slot 會因為 swap-remove 變動，所以每隻敵人另外有一個穩定的 id（可重複使用）與世代計數；
+ * handle = 世代 << ID_BITS | id。敵人死掉世代就加一，舊的 handle 從此 resolve 不到。
+ */
+public class EnemyPool implements EnemyView {
+    public int[] gx, gy;
+    public int[] hp, maxHp;
+    public int[] id;
+    private int size = 0;
+
+    public static final int NONE = -1;
+    private static final int ID_BITS = 20;
+    private static final int ID_MASK = (1 << ID_BITS) - 1;
+    private static final int GEN_MASK = (1 << (31 - ID_BITS)) - 1;
+
+    // 依 id 索引
+    private int[] slotOfId, gen;
+    private int[] freeIds;
+    private int freeCount = 0, idCount = 0;
+
+    public EnemyPool(int capacity) {
+        gx = new int[capacity];
+        gy = new int[capacity];
+        hp = new int[capacity];
+        maxHp = new int[capacity];
+        id = new int[capacity];
+        slotOfId = new int[capacity];
+        gen = new int[capacity];
+        freeIds = new int[capacity];
+    }
+
+    public int add(int gx, int gy, int hp) {
+        if (size == this.gx.length) grow();
+        int i = size++;
+        this.gx[i] = gx; this.gy[i] = gy;
+        this.hp[i] = hp; this.maxHp[i] = hp;
+
+        int e = freeCount > 0 ? freeIds[--freeCount] : idCount++;
+        if (e > ID_MASK) throw new IllegalStateException("too many enemies");
+        if (e == slotOfId.length) growIds();
+        id[i] = e;
+        slotOfId[e] = i;
+        return i;
+    }
+
+    /** 移除 i，最後一隻搬到 i */
+    public void removeAt(int i) {
+        release(id[i]);
+        int last = --size;
+        if (i != last) {
+            gx[i] = gx[last]; gy[i] = gy[last];
+            hp[i] = hp[last]; maxHp[i] = maxHp[last];
+            id[i] = id[last];
+            slotOfId[id[i]] = i;
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) release(id[i]);
+        size = 0;
+    }
+
+    /** 回到剛建立時的狀態（id 從 0 重新發、世代歸零），容量留著；新的一場用，handle 才跟新的 pool 一樣 */
+    public void reset() {
+        Arrays.fill(gen, 0, idCount, 0);
+        size = 0;
+        idCount = 0;
+        freeCount = 0;
+    }
+
+    /** slot i 目前這隻敵人的 handle */
+    public int handle(int i) {
+        int e = id[i];
+        return gen[e] << ID_BITS | e;
+    }
+
+    /** handle 對應的 slot；敵人已經死了（或 NONE）回傳 -1 */
+    public int resolve(int handle) {
+        if (handle < 0) return -1;
+        int e = handle & ID_MASK;
+        if (e >= idCount || gen[e] != handle >>> ID_BITS) return -1;
+        int i = slotOfId[e];
+        return i < size && id[i] == e ? i : -1;
+    }
+
+    private void release(int e) {
+        gen[e] = (gen[e] + 1) & GEN_MASK;
+        if (freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        freeIds[freeCount++] = e;
+    }
+
+    public int capacity() { return gx.length; }
+
+    /** snapshot：每個欄位整段寫（依 slot 順序），加上 id 的世代與 free list，子彈鎖定的 handle 才對得上 */
+    public void write(ByteBuffer b) {
+        b.putInt(size);
+        BufferIO.putInts(b, gx, 0, size);
+        BufferIO.putInts(b, gy, 0, size);
+        BufferIO.putInts(b, hp, 0, size);
+        BufferIO.putInts(b, maxHp, 0, size);
+        BufferIO.putInts(b, id, 0, size);
+        b.putInt(idCount);
+        BufferIO.putInts(b, gen, 0, idCount);
+        b.putInt(freeCount);
+        BufferIO.putInts(b, freeIds, 0, freeCount);
+    }
+
+    /** 讀回 write 寫的內容，取代目前所有敵人 */
+    public void read(ByteBuffer b) {
+        size = 0;
+        int n = b.getInt();
+        while (gx.length < n) grow();
+        BufferIO.getInts(b, gx, 0, n);
+        BufferIO.getInts(b, gy, 0, n);
+        BufferIO.getInts(b, hp, 0, n);
+        BufferIO.getInts(b, maxHp, 0, n);
+        BufferIO.getInts(b, id, 0, n);
+        size = n;
+
+        idCount = b.getInt();
+        while (slotOfId.length < idCount) growIds();
+        BufferIO.getInts(b, gen, 0, idCount);
+        freeCount = b.getInt();
+        if (freeIds.length < freeCount) freeIds = Arrays.copyOf(freeIds, freeCount);
+        BufferIO.getInts(b, freeIds, 0, freeCount);
+        for (int i = 0; i < size; i++) slotOfId[id[i]] = i;
+    }
+
+    private void grow() {
+        int n = gx.length * 2;
+        gx = Arrays.copyOf(gx, n);
+        gy = Arrays.copyOf(gy, n);
+        hp = Arrays.copyOf(hp, n);
+        maxHp = Arrays.copyOf(maxHp, n);
+        id = Arrays.copyOf(id, n);
+    }
+
+    private void growIds() {
+        int n = slotOfId.length * 2;
+        slotOfId = Arrays.copyOf(slotOfId, n);
+        gen = Arrays.copyOf(gen, n);
+    }
+
+    @Override public int size() { return size; }
+    @Override public int gx(int i) { return gx[i]; }
+    @Override public int gy(int i) { return gy[i]; }
+    @Override public int hp(int i) { return hp[i]; }
+    @Override public int maxHp(int i) { return maxHp[i]; }
+}
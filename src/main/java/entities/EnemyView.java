@@ -0,0 +1,10 @@
+package entities;
+
+/** 敵人池的唯讀視圖（給畫面用） */
+public interface EnemyView {
+    int size();
+    int gx(int i);
+    int gy(int i);
+    int hp(int i);
+    int maxHp(int i);
+}
@@ -1,6 +0,0 @@
-package entities;
-
-public class ExpOrb {
-    public int gx, gy;
-    public ExpOrb(int gx, int gy) { this.gx = gx; this.gy = gy; }
-}
@@ -0,0 +1,87 @@
+package entities;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 經驗球：每格存一個數量（int[cols*rows]），掉在已經有球的格子就合併。
+ * 另外用一個緊密的 list 記有球的格子（swap-remove），畫面只走這些格子。
+ * 記憶體與每個 tick 的成本都只跟地圖大小有關，跟掉了幾顆球無關。
+ */
+public class ExpOrbGrid implements ExpOrbView {
+    private final int cols;
+    private final int[] count;    // 依格子索引
+    private final int[] slotOf;   // 格子在 cells 裡的位置，-1 = 沒球
+    private final int[] cells;    // 有球的格子
+    private int size = 0;
+
+    public ExpOrbGrid(int cols, int rows) {
+        this.cols = cols;
+        int n = cols * rows;
+        count = new int[n];
+        slotOf = new int[n];
+        cells = new int[n];
+        Arrays.fill(slotOf, -1);
+    }
+
+    /** 在 (gx, gy) 加 n 顆 */
+    public void add(int gx, int gy, int n) {
+        int c = gy * cols + gx;
+        if (count[c] == 0) {
+            slotOf[c] = size;
+            cells[size++] = c;
+        }
+        count[c] += n;
+    }
+
+    public void add(int gx, int gy) { add(gx, gy, 1); }
+
+    @Override public int countAt(int gx, int gy) { return count[gy * cols + gx]; }
+
+    /** 拿走 (gx, gy) 上所有的球，回傳顆數 */
+    public int take(int gx, int gy) {
+        int c = gy * cols + gx;
+        int n = count[c];
+        if (n == 0) return 0;
+        count[c] = 0;
+
+        int i = slotOf[c], last = --size;
+        if (i != last) {
+            int moved = cells[last];
+            cells[i] = moved;
+            slotOf[moved] = i;
+        }
+        slotOf[c] = -1;
+        return n;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            count[cells[i]] = 0;
+            slotOf[cells[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /** snapshot：有球的格子（依 list 順序）與數量 */
+    public void write(ByteBuffer b) {
+        b.putInt(size);
+        for (int i = 0; i < size; i++) b.putInt(cells[i]).putInt(count[cells[i]]);
+    }
+
+    /** 讀回 write 寫的內容，取代目前所有的球 */
+    public void read(ByteBuffer b) {
+        clear();
+        int n = b.getInt();
+        for (int i = 0; i < n; i++) {
+            int c = b.getInt();
+            add(c % cols, c / cols, b.getInt());
+        }
+    }
+
+    /** 有球的格子數（不是球的總數） */
+    @Override public int size() { return size; }
+    @Override public int gx(int i) { return cells[i] % cols; }
+    @Override public int gy(int i) { return cells[i] / cols; }
+    @Override public int count(int i) { return count[cells[i]]; }
+}
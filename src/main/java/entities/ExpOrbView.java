@@ -0,0 +1,12 @@
+package entities;
+
+/** 經驗球的唯讀視圖（給畫面用）：第 i 個有球的格子 */
+public interface ExpOrbView {
+    int size();
+    int gx(int i);
+    int gy(int i);
+    /** 這格合併了幾顆 */
+    int count(int i);
+    /** 格子 (gx, gy) 上有幾顆 */
+    int countAt(int gx, int gy);
+}
@@ -0,0 +1,16 @@
+package entities;
+
+import java.util.List;
+
+/** game over 畫面一次要的資料：最新幾筆、這個難度的統計、每個難度的個人最佳 */
+public class RunOverview {
+    public List<RunRecord> recent;  // 新的在前
+    public RunStats stats;          // 查不到是 null
+    public List<RunRecord> bests;   // 每個難度分數最高的一筆，難度由小到大
+
+    public RunOverview(List<RunRecord> recent, RunStats stats, List<RunRecord> bests) {
+        this.recent = recent;
+        this.stats = stats;
+        this.bests = bests;
+    }
+}
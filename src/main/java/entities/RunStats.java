@@ -0,0 +1,59 @@
+package entities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** 某個難度的統計：筆數、最高分、分數百分位（nearest-rank）與前幾名（高分在前） */
+public class RunStats {
+    public int difficulty;
+    public int count;
+    public int best;
+    public int p50, p90, p99;
+    public List<RunRecord> top;
+
+    public RunStats(int difficulty, int count, int best, int p50, int p90, int p99, List<RunRecord> top) {
+        this.difficulty = difficulty;
+        this.count = count;
+        this.best = best;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.top = top;
+    }
+
+    public static RunStats empty(int difficulty) {
+        return new RunStats(difficulty, 0, 0, 0, 0, 0, Collections.emptyList());
+    }
+
+    /** 從依分數由高到低排好的全部紀錄算（沒有索引的 repository 用） */
+    public static RunStats fromSorted(int difficulty, List<RunRecord> byScoreDesc, int topN) {
+        int n = byScoreDesc.size();
+        if (n == 0) return empty(difficulty);
+        return new RunStats(difficulty, n, byScoreDesc.get(0).score,
+                byScoreDesc.get(percentileIndex(n, 0.50)).score,
+                byScoreDesc.get(percentileIndex(n, 0.90)).score,
+                byScoreDesc.get(percentileIndex(n, 0.99)).score,
+                new ArrayList<>(byScoreDesc.subList(0, Math.min(topN, n))));
+    }
+
+    /** 由高到低排的 count 筆裡，第 p 百分位（至少有 p 的紀錄分數不超過它）的位置 */
+    public static int percentileIndex(int count, double p) {
+        int ascending = Math.max(0, (int) Math.ceil(p * count) - 1);
+        return count - 1 - ascending;
+    }
+
+    /** score 在前幾名裡的名次（1 起算，同分算同一名）；排不進 top 回傳 -1 */
+    public int rankOf(int score) {
+        int rank = 1;
+        for (RunRecord r : top) if (r.score > score) rank++;
+        return rank <= top.size() ? rank : -1;
+    }
+
+    /** score 是不是這個難度的新個人最佳：沒有其他紀錄分數跟它一樣或更高（這一場自己可能已經在 top 裡） */
+    public boolean isPersonalBest(int score) {
+        int atLeast = 0;
+        for (RunRecord r : top) if (r.score >= score) atLeast++;
+        return score > 0 && atLeast <= 1 && (top.isEmpty() || top.get(0).score <= score);
+    }
+}
@@ -0,0 +1,56 @@
+package game;
+
+/**
+ * 地圖大小與畫面可見範圍（單位：格子）。引擎與畫面都從這裡拿，不再各自寫死。
+ *
+ * 地圖可以比畫面大：畫面跟著玩家捲動，引擎只在玩家附近的「活動範圍」
+ * （可見範圍往外 margin 格）做尋路、生怪與子彈回收，工作量跟地圖大小無關。
+ * 預設 28×18 跟畫面一樣大，活動範圍就是整張地圖。
+ */
+public final class Arena {
+
+    public static final Arena DEFAULT = new Arena(28, 18, 32, 28, 18, 4);
+
+    public final int cols, rows, cell;
+    public final int viewCols, viewRows;
+    public final int margin;
+    public final int width, height;          // 整張地圖（像素）
+    public final int viewWidth, viewHeight;  // 畫面（像素）
+
+    public Arena(int cols, int rows, int cell, int viewCols, int viewRows, int margin) {
+        if (cols < 1 || rows < 1 || cols > 0x7FFF || rows > 0x7FFF) throw new IllegalArgumentException("arena " + cols + "x" + rows);
+        // 子彈只檢查自己那一格的敵人，格子小於命中直徑會漏打隔壁格
+        if (cell < 2 * GameEngine.HIT_RADIUS)
+            throw new IllegalArgumentException("cell " + cell + " < " + 2 * GameEngine.HIT_RADIUS + " (bullet hit diameter)");
+        if (viewCols < 1 || viewRows < 1 || margin < 0)
+            throw new IllegalArgumentException("view " + viewCols + "x" + viewRows + " margin " + margin);
+        this.cols = cols;
+        this.rows = rows;
+        this.cell = cell;
+        this.viewCols = Math.min(viewCols, cols);
+        this.viewRows = Math.min(viewRows, rows);
+        this.margin = margin;
+        this.width = cols * cell;
+        this.height = rows * cell;
+        this.viewWidth = this.viewCols * cell;
+        this.viewHeight = this.viewRows * cell;
+    }
+
+    /** -Dsnake.arena=500x500（預設 28x18），-Dsnake.cell=32（至少 24） */
+    public static Arena fromSystemProperties() {
+        return parse(System.getProperty("snake.arena", "28x18"), Integer.getInteger("snake.cell", DEFAULT.cell));
+    }
+
+    /** "COLSxROWS" */
+    public static Arena parse(String size, int cell) {
+        String[] p = size.toLowerCase().split("x");
+        int cols = Integer.parseInt(p[0].trim()), rows = Integer.parseInt(p[1].trim());
+        return new Arena(cols, rows, cell, DEFAULT.viewCols, DEFAULT.viewRows, DEFAULT.margin);
+    }
+
+    /** 畫面左上角的格子：以 (gx, gy) 為中心，不超出地圖 */
+    public int viewX(int gx) { return clamp(gx - viewCols / 2, cols - viewCols); }
+    public int viewY(int gy) { return clamp(gy - viewRows / 2, rows - viewRows); }
+
+    private static int clamp(int v, int hi) { return Math.max(0, Math.min(hi, v)); }
+}
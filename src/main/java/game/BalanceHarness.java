@@ -0,0 +1,241 @@
+package game;
+
+import cards.AutoCardChooser;
+import cards.Card;
+import cards.CardChooser;
+import cards.CardFactory;
+import cards.PreferCardChooser;
+import data.NoopRunRepository;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 平衡測試：難度 × 選卡策略，每組跑 N 場無畫面模擬（所有核心一起跑），
+ * 統計存活時間、擊殺、等級、分數的分布，輸出 CSV（檔名是 .json 就輸出 JSON）。
+ *
+ * 用法：java -cp target/classes game.BalanceHarness [--runs N] [--difficulties 1-10]
+ *       [--strategies random,Rapid Fire,...|all] [--bot chase|script] [--max-sec SEC]
+ *       [--seed S] [--threads T] [--out balance.csv]
+ * 選卡策略：random 隨機選，其他值是卡名（有出現就選它）；all = random 加上每一張卡。
+ * 同一組裡第 r 場用 seed + r，不同組的第 r 場 seed 相同，比較策略時雜訊比較小。
+ */
+public class BalanceHarness {
+
+    private static final String RANDOM = "random";
+
+    /** 一組（難度 × 策略）的所有場次結果 */
+    static final class Group {
+        final int difficulty;
+        final String strategy;
+        final double[] survived;
+        final int[] kills, level, score;
+
+        Group(int difficulty, String strategy, int runs) {
+            this.difficulty = difficulty;
+            this.strategy = strategy;
+            survived = new double[runs];
+            kills = new int[runs];
+            level = new int[runs];
+            score = new int[runs];
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = 170;
+        int dMin = 1, dMax = 10;
+        String strategies = "all";
+        String bot = "chase";
+        double maxSec = 600;
+        long seed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String out = "balance.csv";
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "--runs": runs = Integer.parseInt(v); break;
+                case "--difficulties": {
+                    String[] p = v.split("-");
+                    dMin = Integer.parseInt(p[0].trim());
+                    dMax = Integer.parseInt(p[p.length - 1].trim());
+                    break;
+                }
+                case "--strategies": strategies = v; break;
+                case "--bot": bot = v; break;
+                case "--max-sec": maxSec = Double.parseDouble(v); break;
+                case "--seed": seed = Long.parseLong(v); break;
+                case "--threads": threads = Integer.parseInt(v); break;
+                case "--out": out = v; break;
+                default: System.err.println("[BalanceHarness] unknown option: " + args[i]);
+            }
+        }
+
+        List<Group> groups = new ArrayList<>();
+        for (int d = dMin; d <= dMax; d++)
+            for (String s : parseStrategies(strategies)) groups.add(new Group(d, s, runs));
+
+        int total = groups.size() * runs;
+        System.out.printf("[BalanceHarness] %d groups x %d runs = %d runs on %d threads%n",
+                groups.size(), runs, total, threads);
+
+        // 一場一個 task；結果直接寫進各組自己的陣列（每個 index 只有一個 task 寫）
+        ExecutorService exec = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "balance-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger done = new AtomicInteger();
+        AtomicLong ticks = new AtomicLong();
+        long t0 = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>(total);
+        final String botName = bot;
+        final double maxSecF = maxSec;
+        final long seedF = seed;
+        for (Group g : groups) {
+            for (int r = 0; r < runs; r++) {
+                final int run = r;
+                futures.add(exec.submit(() -> {
+                    ticks.addAndGet(runOne(g, run, seedF + run, botName, maxSecF));
+                    int n = done.incrementAndGet();
+                    if (n % 500 == 0 || n == total)
+                        System.out.printf("[BalanceHarness] %d / %d (%.0fs)%n", n, total, (System.nanoTime() - t0) / 1e9);
+                }));
+            }
+        }
+        for (Future<?> f : futures) f.get();
+        exec.shutdown();
+
+        double sec = (System.nanoTime() - t0) / 1e9;
+        System.out.printf("[BalanceHarness] %d runs, %d ticks in %.1fs -> %.0f ticks/sec%n",
+                total, ticks.get(), sec, ticks.get() / sec);
+
+        Path file = Paths.get(out);
+        if (file.toAbsolutePath().getParent() != null) Files.createDirectories(file.toAbsolutePath().getParent());
+        if (out.endsWith(".json")) writeJson(file, groups, maxSec);
+        else writeCsv(file, groups, maxSec);
+        System.out.println("[BalanceHarness] report: " + file.toAbsolutePath());
+    }
+
+    /** 跑一場，回傳 tick 數 */
+    static int runOne(Group g, int run, long seed, String bot, double maxSec) {
+        GameRng cardRng = new GameRng(seed ^ 0x5DEECE66DL);
+        CardChooser chooser = g.strategy.equals(RANDOM)
+                ? new AutoCardChooser(cardRng)
+                : new PreferCardChooser(g.strategy, cardRng);
+        InputPolicy input = bot.equals("script") ? new ScriptedInput("RRRRDDDDLLLLUUUU", 6) : new ChaseBot();
+        GameEngine engine = new GameEngine(g.difficulty, chooser, new NoopRunRepository(), seed);
+
+        int ticks = 0;
+        while (engine.alive && engine.survivedSec < maxSec) {
+            int f = input.decide(engine);
+            engine.tick(GameEngine.SIM_DT, InputPolicy.up(f), InputPolicy.down(f), InputPolicy.left(f), InputPolicy.right(f));
+            ticks++;
+        }
+        engine.close();
+
+        g.survived[run] = engine.survivedSec;
+        g.kills[run] = engine.gs.kills;
+        g.level[run] = engine.gs.level;
+        g.score[run] = engine.gs.score;
+        return ticks;
+    }
+
+    private static List<String> parseStrategies(String s) {
+        List<String> list = new ArrayList<>();
+        if (s.equals("all")) {
+            list.add(RANDOM);
+            for (Card c : CardFactory.createDefaultCards()) list.add(c.name());
+            return list;
+        }
+        for (String p : s.split(",")) if (!p.isBlank()) list.add(p.trim());
+        return list;
+    }
+
+    // ===== report =====
+
+    private static final String[] COLUMNS = {
+            "difficulty", "strategy", "runs", "capped_pct",
+            "time_mean", "time_p10", "time_p50", "time_p90",
+            "kills_mean", "kills_p50", "kills_p90",
+            "level_mean", "level_p50", "level_p90",
+            "score_mean", "score_p10", "score_p50", "score_p90"
+    };
+
+    private static double[] row(Group g, double maxSec) {
+        double[] t = g.survived.clone();
+        double[] k = toDoubles(g.kills), l = toDoubles(g.level), s = toDoubles(g.score);
+        Arrays.sort(t); Arrays.sort(k); Arrays.sort(l); Arrays.sort(s);
+        int capped = 0;
+        for (double v : t) if (v >= maxSec) capped++;
+        return new double[]{
+                100.0 * capped / t.length,
+                mean(t), pct(t, 10), pct(t, 50), pct(t, 90),
+                mean(k), pct(k, 50), pct(k, 90),
+                mean(l), pct(l, 50), pct(l, 90),
+                mean(s), pct(s, 10), pct(s, 50), pct(s, 90)
+        };
+    }
+
+    private static void writeCsv(Path file, List<Group> groups, double maxSec) throws IOException {
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(file))) {
+            w.println(String.join(",", COLUMNS));
+            for (Group g : groups) {
+                StringBuilder sb = new StringBuilder();
+                sb.append(g.difficulty).append(",\"").append(g.strategy).append("\",").append(g.survived.length);
+                for (double v : row(g, maxSec)) sb.append(',').append(String.format(Locale.ROOT, "%.2f", v));
+                w.println(sb);
+            }
+        }
+    }
+
+    private static void writeJson(Path file, List<Group> groups, double maxSec) throws IOException {
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(file))) {
+            w.println("[");
+            for (int gi = 0; gi < groups.size(); gi++) {
+                Group g = groups.get(gi);
+                double[] r = row(g, maxSec);
+                StringBuilder sb = new StringBuilder("  {");
+                sb.append("\"difficulty\": ").append(g.difficulty)
+                        .append(", \"strategy\": \"").append(g.strategy.replace("\"", "\\\"")).append('"')
+                        .append(", \"runs\": ").append(g.survived.length);
+                for (int i = 0; i < r.length; i++)
+                    sb.append(", \"").append(COLUMNS[i + 3]).append("\": ").append(String.format(Locale.ROOT, "%.2f", r[i]));
+                sb.append(gi + 1 < groups.size() ? "}," : "}");
+                w.println(sb);
+            }
+            w.println("]");
+        }
+    }
+
+    private static double[] toDoubles(int[] a) {
+        double[] d = new double[a.length];
+        for (int i = 0; i < a.length; i++) d[i] = a[i];
+        return d;
+    }
+
+    private static double mean(double[] a) {
+        double s = 0;
+        for (double v : a) s += v;
+        return a.length == 0 ? 0 : s / a.length;
+    }
+
+    /** 已排序陣列的第 p 百分位（nearest rank） */
+    private static double pct(double[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+}
@@ -0,0 +1,65 @@
+package game;
+
+import entities.EnemyView;
+import entities.ExpOrbView;
+
+/** 簡單的 bot：敵人太近就往最安全的方向走，不然去撿最近的經驗球 */
+public class ChaseBot implements InputPolicy {
+
+    private static final int DANGER = 4;  // 曼哈頓距離幾格內算危險
+    private static final int[][] DIRS = {{0, -1, UP}, {0, 1, DOWN}, {-1, 0, LEFT}, {1, 0, RIGHT}};
+
+    @Override
+    public int decide(GameEngine engine) {
+        int px = engine.px, py = engine.py;
+
+        int here = minEnemyDist(engine, px, py);
+        if (here <= DANGER) {
+            int best = 0, bestScore = safety(engine, px, py, here);
+            for (int[] d : DIRS) {
+                int nx = px + d[0], ny = py + d[1];
+                if (!engine.inBounds(nx, ny)) continue;
+                int s = safety(engine, nx, ny, minEnemyDist(engine, nx, ny));
+                if (s > bestScore) { bestScore = s; best = d[2]; }
+            }
+            return best;
+        }
+
+        ExpOrbView orbs = engine.expOrbs();
+        int ox = -1, oy = -1, bestO = Integer.MAX_VALUE;
+        for (int i = 0; i < orbs.size(); i++) {
+            int d = Math.abs(orbs.gx(i) - px) + Math.abs(orbs.gy(i) - py);
+            if (d < bestO) { bestO = d; ox = orbs.gx(i); oy = orbs.gy(i); }
+        }
+        if (bestO == Integer.MAX_VALUE) return 0;
+        return toward(px, py, ox, oy);
+    }
+
+    private static int minEnemyDist(GameEngine engine, int x, int y) {
+        EnemyView enemies = engine.enemies();
+        int best = Integer.MAX_VALUE;
+        for (int i = 0; i < enemies.size(); i++) {
+            int d = Math.abs(enemies.gx(i) - x) + Math.abs(enemies.gy(i) - y);
+            if (d < best) best = d;
+        }
+        return best;
+    }
+
+    /** 離敵人越遠越好；離牆太近容易被包夾，稍微扣分 */
+    private static int safety(GameEngine engine, int x, int y, int enemyDist) {
+        return enemyDist * 4 + edgeRoom(engine, x, y);
+    }
+
+    private static int edgeRoom(GameEngine engine, int x, int y) {
+        int room = 0;
+        for (int[] d : DIRS) if (engine.inBounds(x + d[0], y + d[1])) room++;
+        return room;
+    }
+
+    private static int toward(int px, int py, int tx, int ty) {
+        int dx = tx - px, dy = ty - py;
+        if (dx == 0 && dy == 0) return 0;
+        if (Math.abs(dx) >= Math.abs(dy)) return dx > 0 ? RIGHT : LEFT;
+        return dy > 0 ? DOWN : UP;
+    }
+}
@@ -0,0 +1,193 @@
+package game;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * 當機還原用的 checkpoint：把 GameEngine.writeSnapshot 寫進 memory-mapped 檔案。
+ * snapshot 先寫進重複使用的 ByteBuffer，再整塊複製進 mapping，不經過 write() 也不 fsync；
+ * JVM 當掉時資料已經在 OS 的 page cache 裡，一樣會寫回檔案。
+ *
+ * 檔案格式：header 16 bytes（magic, version, slotSize, reserved），之後兩個 slot 輪流寫，
+ * 每個 slot 前面 32 bytes：long seq, int length, int crc32c, int difficulty, int level, double survivedSec。
+ * seq 最後寫；讀的時候取 crc 對得上、seq 最大的那個，寫到一半當掉也還有上一份。
+ */
+public final class Checkpoint implements AutoCloseable {
+
+    private static final int MAGIC = 0x534E4B43;  // "SNKC"
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    private static final int SLOT_HEADER = 32;
+    private static final int MIN_SLOT = 64 * 1024;
+
+    /** 多久寫一次（秒） */
+    public static final double PERIOD_SEC = 5;
+
+    /** 讀出來的 checkpoint：摘要（給選單顯示）加上 snapshot 本身 */
+    public static final class Saved {
+        public final int difficulty, level;
+        public final double survivedSec;
+        public final ByteBuffer data;
+
+        Saved(int difficulty, int level, double survivedSec, ByteBuffer data) {
+            this.difficulty = difficulty;
+            this.level = level;
+            this.survivedSec = survivedSec;
+            this.data = data;
+        }
+    }
+
+    private final FileChannel ch;
+    private MappedByteBuffer map;
+    private int slotSize;
+    private long seq;
+    private ByteBuffer scratch = ByteBuffer.allocate(MIN_SLOT);
+    private final CRC32C crc = new CRC32C();
+
+    public Checkpoint(Path file) {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            boolean ok = false;
+            if (ch.size() >= HEADER) {
+                map = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+                slotSize = map.getInt(8);
+                ok = map.getInt(0) == MAGIC && map.getInt(4) == VERSION && slotSize >= MIN_SLOT
+                        && ch.size() >= HEADER + 2L * slotSize;
+            }
+            if (ok) {
+                map();
+                seq = Math.max(map.getLong(slotAt(0)), map.getLong(slotAt(1)));
+            } else {
+                // 沒有檔案或看不懂：重新開始（只是 checkpoint，不是紀錄）
+                slotSize = MIN_SLOT;
+                map();
+                map.putLong(slotAt(0), 0);
+                map.putLong(slotAt(1), 0);
+                map.putInt(0, MAGIC);
+                map.putInt(4, VERSION);
+                map.putInt(8, slotSize);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** ~/.snakegame/checkpoint.snck */
+    public static Path defaultFile() {
+        return Paths.get(System.getProperty("user.home"), ".snakegame", "checkpoint.snck");
+    }
+
+    /** 寫一份 checkpoint；要在兩個 tick 之間呼叫（同一條執行緒） */
+    public void save(GameEngine engine) {
+        ByteBuffer b = scratch;
+        while (true) {
+            b.clear();
+            try {
+                engine.writeSnapshot(b);
+                break;
+            } catch (BufferOverflowException e) {
+                scratch = b = ByteBuffer.allocate(b.capacity() * 2);
+            }
+        }
+        b.flip();
+        int len = b.remaining();
+        crc.reset();
+        crc.update(b);
+        b.rewind();
+
+        long next = seq + 1;
+        if (SLOT_HEADER + len > slotSize) {
+            // 變大後寫在新的 slot 1：它在舊的兩個 slot 後面，寫完之前舊的都還在
+            grow(SLOT_HEADER + len);
+            if ((next & 1) == 0) next++;
+        }
+        int at = slotAt((int) (next & 1));
+        map.put(at + SLOT_HEADER, b, 0, len);
+        map.putInt(at + 8, len);
+        map.putInt(at + 12, (int) crc.getValue());
+        map.putInt(at + 16, engine.getDifficulty());
+        map.putInt(at + 20, engine.gs.level);
+        map.putDouble(at + 24, engine.survivedSec);
+        map.putLong(at, next);
+        map.putInt(8, slotSize);
+        seq = next;
+    }
+
+    /** 最新一份完整的 checkpoint，沒有就回傳 null */
+    public Saved latest() {
+        Saved best = null;
+        long bestSeq = 0;
+        for (int k = 0; k < 2; k++) {
+            int at = slotAt(k);
+            long s = map.getLong(at);
+            int len = map.getInt(at + 8);
+            if (s <= bestSeq || len <= 0 || len > slotSize - SLOT_HEADER) continue;
+
+            ByteBuffer data = ByteBuffer.allocate(len);
+            data.put(0, map, at + SLOT_HEADER, len);
+            crc.reset();
+            crc.update(data);
+            data.rewind();
+            if ((int) crc.getValue() != map.getInt(at + 12)) continue;
+
+            best = new Saved(map.getInt(at + 16), map.getInt(at + 20), map.getDouble(at + 24), data);
+            bestSeq = s;
+        }
+        return best;
+    }
+
+    /** 這場結束了（game over）：之後不會再被拿來接著玩 */
+    public void clear() {
+        map.putLong(slotAt(0), 0);
+        map.putLong(slotAt(1), 0);
+    }
+
+    /** 讀檔案裡最新的 checkpoint 就關掉；沒有或讀不到回傳 null */
+    public static Saved peek(Path file) {
+        if (!Files.exists(file)) return null;
+        try (Checkpoint c = new Checkpoint(file)) {
+            return c.latest();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        map.force();
+        try {
+            ch.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private int slotAt(int k) { return HEADER + k * slotSize; }
+
+    private void grow(int need) {
+        int size = slotSize * 2;
+        while (size < need) size *= 2;
+        slotSize = size;
+        map();
+    }
+
+    private void map() {
+        try {
+            map = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + 2L * slotSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package game;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 以玩家為起點做一次 BFS：dist 是走到玩家的步數，
+ * next 是往玩家方向的下一格。所有敵人共用，一隻敵人走一步只要查表。
+ * 牆（wall）不能走，也不會被 BFS 穿過。
+ * BFS 只在指定的範圍（引擎的活動範圍）裡跑；用 stamp 判斷這次有沒有走到，不用每次清整張表。
+ */
+public class FlowField {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final int cols, rows;
+    private final int[] dist;
+    private final int[] next;
+    private final boolean[] wall;
+    private final int[] queue;
+    private final int[] stamp;
+    private int current = 0;
+    private int wallVersion = 0;
+
+    public FlowField(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        int n = cols * rows;
+        this.dist = new int[n];
+        this.next = new int[n];
+        this.wall = new boolean[n];
+        this.queue = new int[n];
+        this.stamp = new int[n];
+    }
+
+    /** 以 (tx, ty) 為目標重算整張地圖 */
+    public void compute(int tx, int ty) {
+        compute(tx, ty, 0, 0, cols - 1, rows - 1);
+    }
+
+    /** 以 (tx, ty) 為目標，只算 [x0, x1] × [y0, y1] 裡的格子；範圍外都當作走不到 */
+    public void compute(int tx, int ty, int x0, int y0, int x1, int y1) {
+        if (++current == 0) {  // 繞一圈了，舊的 stamp 可能撞到
+            Arrays.fill(stamp, 0);
+            current = 1;
+        }
+
+        int target = ty * cols + tx;
+        int qh = 0, qt = 0;
+        stamp[target] = current;
+        dist[target] = 0;
+        next[target] = target;
+        queue[qt++] = target;
+
+        while (qh < qt) {
+            int c = queue[qh++];
+            int cx = c % cols, cy = c / cols;
+            int d = dist[c] + 1;
+            // 固定的鄰居順序，結果才會 deterministic
+            if (cy > y0) qt = visit(c - cols, c, d, qt);
+            if (cy < y1) qt = visit(c + cols, c, d, qt);
+            if (cx > x0) qt = visit(c - 1, c, d, qt);
+            if (cx < x1) qt = visit(c + 1, c, d, qt);
+        }
+    }
+
+    private int visit(int n, int from, int d, int qt) {
+        if (wall[n] || stamp[n] == current) return qt;
+        stamp[n] = current;
+        dist[n] = d;
+        next[n] = from;
+        queue[qt] = n;
+        return qt + 1;
+    }
+
+    /** 往目標的下一格（cell index），走不到回傳 -1 */
+    public int next(int cell) { return stamp[cell] == current ? next[cell] : -1; }
+
+    public int dist(int cell) { return stamp[cell] == current ? dist[cell] : UNREACHABLE; }
+
+    public boolean isWall(int gx, int gy) { return wall[gy * cols + gx]; }
+
+    /** 改牆之後要重新 compute */
+    public void setWall(int gx, int gy, boolean on) {
+        int c = gy * cols + gx;
+        if (wall[c] == on) return;
+        wall[c] = on;
+        wallVersion++;
+    }
+
+    /** 拆掉所有牆（新的一場） */
+    public void clearWalls() {
+        if (wallVersion == 0) return;
+        Arrays.fill(wall, false);
+        wallVersion++;
+    }
+
+    /** 牆每改一次就加一，畫面用來判斷背景要不要重畫 */
+    public int wallVersion() { return wallVersion; }
+
+    /** snapshot：牆的格子；從來沒改過牆就不用掃整張地圖 */
+    public void writeWalls(ByteBuffer b) {
+        if (wallVersion == 0) {
+            b.putInt(0);
+            return;
+        }
+        int at = b.position(), n = 0;
+        b.putInt(0);
+        for (int c = 0; c < wall.length; c++) {
+            if (!wall[c]) continue;
+            b.putInt(c);
+            n++;
+        }
+        b.putInt(at, n);
+    }
+
+    /** 讀回 writeWalls 寫的牆，之後要重新 compute */
+    public void readWalls(ByteBuffer b) {
+        Arrays.fill(wall, false);
+        int n = b.getInt();
+        for (int k = 0; k < n; k++) wall[b.getInt()] = true;
+        wallVersion++;
+    }
+}
@@ -0,0 +1,164 @@
+package game;
+
+import data.NoopRunRepository;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 連到 GameServer 的 client：非阻塞地收 snapshot、解 delta，最新的一份放進傀儡引擎給 GamePanel 畫；
+ * 每幀送一包很小的 INPUT（方向鍵、選卡、最後收到的 seq 當 ack）。只給一條執行緒用。
+ */
+public final class GameClient implements AutoCloseable {
+
+    private final SocketChannel ch;
+    private ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+    private final ByteBuffer out = ByteBuffer.allocate(256);
+    private final NetCodec codec = new NetCodec();
+    private final NetState[] ring = new NetState[GameServer.HISTORY];
+    private long lastSeq = 0;
+    private NetState latest;
+    private boolean applied = true;
+
+    private Arena arena;
+    private int difficulty;
+    private boolean pilot;
+    private final GameEngine puppet;
+
+    // 統計
+    public long bytesReceived, snapshots, fullSnapshots, hashMismatches, missingBase;
+
+    /** host:port；puppet = false 時只解碼不建引擎（壓力測試用） */
+    public static GameClient connect(String address, boolean puppet) throws IOException {
+        int colon = address.lastIndexOf(':');
+        String host = colon >= 0 ? address.substring(0, colon) : address;
+        int port = colon >= 0 ? Integer.parseInt(address.substring(colon + 1)) : GameServer.DEFAULT_PORT;
+        return new GameClient(new InetSocketAddress(host, port), puppet);
+    }
+
+    private GameClient(InetSocketAddress address, boolean withPuppet) throws IOException {
+        for (int i = 0; i < ring.length; i++) ring[i] = new NetState();
+        ch = SocketChannel.open(address);
+        ch.socket().setTcpNoDelay(true);
+
+        // 先等歡迎封包（地圖大小、難度），之後才能建傀儡引擎
+        while (arena == null) {
+            if (ch.read(in) < 0) throw new IOException("server closed the connection");
+            drain();
+        }
+        ch.configureBlocking(false);
+        puppet = withPuppet ? new GameEngine(arena, difficulty, null, new NoopRunRepository(), 0) : null;
+    }
+
+    public SocketChannel channel() { return ch; }
+
+    /** 給 GamePanel 畫的引擎（不會自己 tick） */
+    public GameEngine puppet() { return puppet; }
+
+    /** 第一個連上的是玩家，其他是觀戰 */
+    public boolean isPilot() { return pilot; }
+
+    public long lastSeq() { return lastSeq; }
+
+    /** 讀完目前收到的資料；有新的 snapshot 就套進傀儡引擎，回傳有沒有新的 */
+    public boolean poll() throws IOException {
+        long before = lastSeq;
+        while (true) {
+            if (!in.hasRemaining()) in = grow(in);
+            int n = ch.read(in);
+            if (n < 0) throw new IOException("server closed the connection");
+            if (n == 0) break;
+            bytesReceived += n;
+            drain();
+        }
+        if (puppet != null && !applied) {
+            puppet.applyNetState(latest);
+            applied = true;
+        }
+        return lastSeq != before;
+    }
+
+    /** 方向鍵與選卡（-1 = 沒選），順便 ack 最後收到的 snapshot */
+    public void sendInput(int flags, int card) throws IOException {
+        if (out.remaining() >= 16) {
+            int at = out.position();
+            out.position(at + 2);
+            out.put(NetCodec.INPUT);
+            NetCodec.putVarLong(out, lastSeq);
+            out.put((byte) flags);
+            out.put((byte) card);
+            out.putShort(at, (short) (out.position() - at - 2));
+        }
+        out.flip();
+        ch.write(out);
+        out.compact();
+    }
+
+    @Override
+    public void close() {
+        try {
+            ch.close();
+        } catch (IOException ignored) {}
+        if (puppet != null) puppet.close();
+    }
+
+    /** 處理 in 裡面完整的封包（[int 長度][內容]） */
+    private void drain() {
+        in.flip();
+        while (in.remaining() >= 4) {
+            int len = in.getInt(in.position());
+            if (in.remaining() < 4 + len) break;
+            int end = in.position() + 4 + len;
+            in.position(in.position() + 4);
+            byte type = in.get();
+            if (type == NetCodec.SNAPSHOT) readSnapshot();
+            else if (type == NetCodec.WELCOME) readWelcome();
+            in.position(end);
+        }
+        in.compact();
+        // 一包比 buffer 還大：放大再讀
+        if (in.position() >= 4 && in.position() == in.capacity()) in = grow(in);
+    }
+
+    private void readWelcome() {
+        arena = new Arena(NetCodec.getVar(in), NetCodec.getVar(in), NetCodec.getVar(in),
+                NetCodec.getVar(in), NetCodec.getVar(in), NetCodec.getVar(in));
+        difficulty = NetCodec.getVar(in);
+        pilot = in.get() != 0;
+    }
+
+    private void readSnapshot() {
+        long seq = NetCodec.getVarLong(in);
+        long baseSeq = NetCodec.getVarLong(in);
+        NetState base = null;
+        if (baseSeq != 0) {
+            base = ring[(int) (baseSeq % ring.length)];
+            if (base.seq != baseSeq) {
+                // 不該發生（ack 過的都還留著）；不 ack 這包，伺服器下次會送完整的
+                missingBase++;
+                return;
+            }
+        } else {
+            fullSnapshots++;
+        }
+        NetState s = ring[(int) (seq % ring.length)];
+        codec.decode(base, s, in);
+        s.seq = seq;
+        if (s.computeHash() != s.hash) hashMismatches++;
+        snapshots++;
+        if (seq > lastSeq) {
+            lastSeq = seq;
+            latest = s;
+            applied = false;
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer b) {
+        ByteBuffer n = ByteBuffer.allocate(b.capacity() * 2);
+        b.flip();
+        n.put(b);
+        return n;
+    }
+}
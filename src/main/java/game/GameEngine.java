@@ -1,36 +1,45 @@
 package game;
 
 import cards.Card;
-import cards.CardDialog;
+import cards.CardChooser;
 import cards.CardFactory;
-import data.MongoService;
+import data.NoopRunRepository;
+import data.RunRepositories;
+import data.RunRepository;
 import entities.*;
 
-import javax.swing.*;
-import java.time.Instant;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class GameEngine {
 
-    private static final int CELL = 32;
-    private static final int COLS = 28;
-    private static final int ROWS = 18;
-    private static final int W = COLS * CELL;
-    private static final int H = ROWS * CELL;
+    public final Arena arena;
+    private final int cols, rows, cell;
 
-    private final JFrame owner;
-    private final int difficulty;
-    private final double enemySpawnInterval;
+    // 活動範圍（含）：尋路、生怪、子彈回收與找目標都只在這裡面做，跟著玩家移動
+    public int activeX0, activeY0, activeX1, activeY1;
+
+    /** 固定模擬步長（120 Hz），跟畫面更新頻率無關 */
+    public static final double SIM_DT = 1.0 / 120;
+    /** 子彈命中半徑（像素） */
+    public static final int HIT_RADIUS = 12;
+
+    private final CardChooser cardChooser;
+    private int difficulty;
+    private double enemySpawnInterval;
 
     public final GameState gs;
-    public boolean needClearInputOnResume = false;
 
     // time / status
     public double survivedSec = 0;
     public boolean alive = true;
+    public long ticks = 0;
 
     // player
-    public int px = COLS / 2, py = ROWS / 2;
+    public int px, py;
 
     // cooldowns
     private double moveCd = 0;
@@ -38,48 +47,206 @@ public class GameEngine {
     private double enemyStepCd = 0;
     private double spawnCd = 0;
 
-    // objects
-    public final List<Enemy> enemies = new ArrayList<>();
-    public final List<Bullet> bullets = new ArrayList<>();
-    public final List<ExpOrb> expOrbs = new ArrayList<>();
+    // objects（structure-of-arrays，畫面透過唯讀 view 取用）
+    private final EnemyPool enemies = new EnemyPool(256);
+    private final BulletPool bullets = new BulletPool(512);
+    private final ExpOrbGrid expOrbs;      // 每格一個數量，同格合併
+    private final SpatialGrid enemyGrid;   // 也當作佔位表：一格只站一隻
+    private final FlowField flow;
+
+    // parallel tick（選用）：可以平行的部分先算進下面的 buffer，再依固定順序套用，結果跟單執行緒一樣
+    static final int PARALLEL_THRESHOLD = 256;
+    private ParallelRange planParallel, bulletParallel;  // null = 單執行緒
+    private int[] stepSlots = new int[256];       // 這一步要走的敵人（活動範圍附近的 chunk），slot 由小到大
+    private int[] plannedCell = new int[256];     // stepSlots[k] 這一步想走的格子
+    private int[] bulletHit = new int[512];       // 子彈命中的格子，-1 沒中，CULLED 飛出去
+    private static final int CULLED = -2;
+    private double phaseDt;
+    private double cullX0, cullY0, cullX1, cullY1;  // 子彈飛出活動範圍外 50px 就回收
+
+    // fire 時每格的目標快取：fireCacheStamp[cell] == fireStamp 才有效
+    private final int[] fireCacheStamp;
+    private final int[] fireCacheTarget;
+    private int fireStamp = 0;
+    private final ParallelRange.Body planEnemies = this::planEnemies;
+    private final ParallelRange.Body moveBullets = this::moveBullets;
 
     // teammates
     public final List<GridPos> teammates = new ArrayList<>();
-    private final Deque<GridPos> trail = new ArrayDeque<>();
     private final int trailMax = 6000;
+    private final TrailRing trail = new TrailRing(trailMax);
 
-    private final Random rng = new Random();
+    public long seed;
+    private final GameRng rng;
 
-    // cards
+    // cards：cardChooser 是 null 時由玩家選（畫面呼叫 pickCard），等待期間模擬暫停
     private final List<Card> cardPool = CardFactory.createDefaultCards();
+    private final int[] cardOrder;                                           // 抽卡用的排列，每次只洗前三張
+    private final ArrayDeque<List<Card>> pendingCards = new ArrayDeque<>();  // 升級時就抽好，依序選
+    public int cardOfferVersion = 0;                                         // 目前的選項換了就加一
     public final List<String> pickedCards = new ArrayList<>();
 
-    // mongo
-    private final MongoService mongo = new MongoService("mongodb://localhost:27017", "snakeGame");
-    public List<RunRecord> recentHistory = new ArrayList<>();
-    private static final int HISTORY_SHOW_N = 8;
+    // replay（null = 不錄）
+    private ReplayRecorder recorder;
+
+    // 各階段耗時（null = 不量）
+    private TickProfiler profiler;
+
+    // 事件（擊殺、升級、game over…），存檔由訂閱者在自己的執行緒上做
+    public final GameEvents events = new GameEvents(4096);
+    private final GameEvents.Subscription persistence;  // 不存檔（NoopRunRepository）就不開執行緒，null
+
+    // persistence
+    private final RunRepository runs;
+    public volatile List<RunRecord> recentHistory = new ArrayList<>();
+    public volatile RunStats runStats;  // 這個難度的排行與百分位（game over 後才有）
+    public volatile List<RunRecord> personalBests = Collections.emptyList();  // 每個難度的最高分（game over 後才有）
+    public volatile int historyVersion = 0;
+    public volatile int runGeneration = 0;  // reset 一次加一；上一場還沒回來的查詢結果靠它丟掉
+    private final Object historyLock = new Object();
+
+    /** 有畫面的模式：玩家在 GamePanel 的選卡畫面選 */
+    public GameEngine(int difficulty) {
+        this(Arena.fromSystemProperties(), difficulty, null, defaultRuns(), System.nanoTime());
+        setParallel(Boolean.getBoolean("snake.parallel"));
+    }
+
+    /** 有畫面的模式，從 checkpoint 接著玩 */
+    public static GameEngine resume(ByteBuffer snapshot) throws IOException {
+        GameEngine e = readSnapshot(snapshot, null, defaultRuns());
+        e.setParallel(Boolean.getBoolean("snake.parallel"));
+        return e;
+    }
+
+    /** 整個程式共用的那份（見 RunRepositories.shared），重新開始不會重新連線 */
+    private static RunRepository defaultRuns() {
+        return RunRepositories.shared();
+    }
+
+    /** 無畫面模式：選卡與存檔都由外部決定；同樣的 seed 加同樣的輸入會得到同樣的結果。cardChooser 可以是 null（見 pickCard） */
+    public GameEngine(int difficulty, CardChooser cardChooser, RunRepository runs, long seed) {
+        this(Arena.DEFAULT, difficulty, cardChooser, runs, seed);
+    }
 
-    public GameEngine(int difficulty, JFrame owner) {
-        this.owner = owner;
+    public GameEngine(Arena arena, int difficulty, CardChooser cardChooser, RunRepository runs, long seed) {
+        this.arena = arena;
+        this.cols = arena.cols;
+        this.rows = arena.rows;
+        this.cell = arena.cell;
+        this.expOrbs = new ExpOrbGrid(cols, rows);
+        this.enemyGrid = new SpatialGrid(cols, rows, cell, 256);
+        this.flow = new FlowField(cols, rows);
+        this.fireCacheStamp = new int[cols * rows];
+        this.fireCacheTarget = new int[cols * rows];
+        this.px = cols / 2;
+        this.py = rows / 2;
+
+        this.seed = seed;
+        this.rng = new GameRng(seed);
+        this.cardChooser = cardChooser;
+        this.runs = runs;
         this.difficulty = clampInt(difficulty, 1, 10);
         this.enemySpawnInterval = mapDifficultyToSpawnInterval(this.difficulty);
         this.gs = new GameState(this.difficulty);
+        this.cardOrder = new int[cardPool.size()];
+        for (int i = 0; i < cardOrder.length; i++) cardOrder[i] = i;
+        updateActiveArea();
+        // 模擬、重播、benchmark 一次開很多個引擎，不存檔就不要多一條輪詢的執行緒跟 worker 搶 CPU
+        this.persistence = runs instanceof NoopRunRepository ? null
+                : events.subscribe("persistence", new RunPersistence(this, runs));
+    }
+
+    /**
+     * 原地開始新的一場：池子、格子、卡池、事件佇列都留著重複使用，只把這一場的狀態歸零，
+     * 結果跟 new GameEngine(arena, difficulty, ..., seed) 一樣（同樣的輸入跑出同樣的 stateHash）。
+     * replay 不會接著錄（設成 null），要錄的話再 setRecorder。要在兩個 tick 之間呼叫。
+     */
+    public void reset(int difficulty, long seed) {
+        this.difficulty = clampInt(difficulty, 1, 10);
+        this.enemySpawnInterval = mapDifficultyToSpawnInterval(this.difficulty);
+        this.seed = seed;
+        rng.setState(seed);
+        gs.reset(this.difficulty);
+
+        survivedSec = 0;
+        alive = true;
+        ticks = 0;
+        px = cols / 2;
+        py = rows / 2;
+        moveCd = fireCd = enemyStepCd = spawnCd = 0;
+
+        enemies.reset();
+        enemyGrid.clear();
+        bullets.clear();
+        expOrbs.clear();
+        flow.clearWalls();
+        trail.clear();
+        teammates.clear();
+
+        for (int i = 0; i < cardOrder.length; i++) cardOrder[i] = i;
+        pendingCards.clear();
+        pickedCards.clear();
+        cardOfferVersion++;
+
+        recorder = null;
+        synchronized (historyLock) {
+            runGeneration++;
+            recentHistory = Collections.emptyList();
+            runStats = null;
+            personalBests = Collections.emptyList();
+            historyVersion++;
+        }
+        events.publish(GameEvents.RESET, ticks, runGeneration, 0, 0);
+        updateActiveArea();
     }
 
+    /**
+     * RunPersistence 查到 game over 畫面的資料時呼叫（在它自己的執行緒上）；generation 是那一場的，
+     * 中間 reset 過就丟掉，不會把上一場（可能是別的難度）的結果寫進新的一場。null 的欄位不改。
+     */
+    void publishHistory(int generation, List<RunRecord> recent, RunStats stats, List<RunRecord> bests) {
+        synchronized (historyLock) {
+            if (generation != runGeneration) return;
+            if (recent != null) recentHistory = recent;
+            if (stats != null) runStats = stats;
+            if (bests != null) personalBests = bests;
+            historyVersion++;
+        }
+    }
+
+    /** 先把還沒處理的事件處理完（game over 的存檔），再關 repository */
     public void close() {
-        try { mongo.close(); } catch (Exception ignored) {}
+        if (persistence != null) persistence.close();
+        try { runs.close(); } catch (Exception ignored) {}
     }
 
-    /** GamePanel 每帧呼叫 */
+    /** 一個模擬步；GamePanel 以固定的 SIM_DT 呼叫 */
     public void tick(double dt, boolean up, boolean down, boolean left, boolean right) {
-        if (!alive) return;
+        if (!alive || awaitingCard()) return;
+
+        if (recorder != null) recorder.input(
+                (up ? InputPolicy.UP : 0) | (down ? InputPolicy.DOWN : 0)
+                        | (left ? InputPolicy.LEFT : 0) | (right ? InputPolicy.RIGHT : 0));
+        ticks++;
+
+        TickProfiler prof = profiler;
+        long t0 = prof != null ? System.nanoTime() : 0;
+        step(dt, up, down, left, right);
+        if (prof != null) prof.lap(TickProfiler.TICK, t0);
+
+        if (recorder != null) recorder.afterTick(this);
+    }
 
+    private void step(double dt, boolean up, boolean down, boolean left, boolean right) {
         survivedSec += dt;
         moveCd -= dt;
         fireCd -= dt;
         spawnCd -= dt;
         enemyStepCd -= dt;
 
+        TickProfiler prof = profiler;
+        long ts = prof != null ? System.nanoTime() : 0;
+
         // --- move ---
         if (moveCd <= 0) {
             int nx = px, ny = py;
@@ -89,203 +256,405 @@ public class GameEngine {
             else if (left && !right) nx--;
             else if (right && !left) nx++;
 
-            if ((nx != px || ny != py) && inBounds(nx, ny)) {
+            if ((nx != px || ny != py) && inBounds(nx, ny) && !flow.isWall(nx, ny)) {
                 px = nx; py = ny;
                 moveCd = gs.moveInterval;
+                updateActiveArea();
 
-                trail.addLast(new GridPos(px, py));
-                while (trail.size() > trailMax) trail.removeFirst();
+                pushTrail(px, py);
                 updateTeammatesFollow();
             }
         }
+        if (prof != null) ts = prof.lap(TickProfiler.MOVE, ts);
 
         // --- enemy step ---
         if (enemyStepCd <= 0) {
             enemyStepCd = gs.enemyStepInterval;
-            for (Enemy e : enemies) {
-                stepEnemyTowardPlayer(e);
-                if (e.gx == px && e.gy == py) {
+            int n = collectStepSlots();
+            runPhase(n, planEnemies, planParallel);
+
+            for (int k = 0; k < n; k++) {
+                int i = stepSlots[k];
+                stepEnemyTowardPlayer(i, plannedCell[k]);
+                if (enemies.gx[i] == px && enemies.gy[i] == py) {
                     gameOver();
                     return;
                 }
             }
         }
+        if (prof != null) ts = prof.lap(TickProfiler.ENEMY, ts);
 
         // --- spawn ---
         if (spawnCd <= 0) {
             spawnCd = enemySpawnInterval;
             spawnEnemyAtBorder();
         }
+        if (prof != null) ts = prof.lap(TickProfiler.SPAWN, ts);
 
         // --- fire ---
         if (fireCd <= 0) {
             fireCd = gs.fireInterval;
 
-            Enemy target = findNearestEnemyPixel(centerX(px), centerY(py));
-            if (target != null) spawnBullet(centerX(px), centerY(py), centerX(target.gx), centerY(target.gy));
-
-            for (GridPos t : teammates) {
-                Enemy tt = findNearestEnemyPixel(centerX(t.x), centerY(t.y));
-                if (tt != null) spawnBullet(centerX(t.x), centerY(t.y), centerX(tt.gx), centerY(tt.gy));
+            // 玩家和隊友一起分配目標；隊友常常擠在同一格，同一格只查一次
+            fireStamp++;
+            fireFrom(px, py);
+            for (int k = 0; k < teammates.size(); k++) {
+                GridPos t = teammates.get(k);
+                fireFrom(t.x, t.y);
             }
         }
+        if (prof != null) ts = prof.lap(TickProfiler.FIRE, ts);
 
         // --- bullets update (homing) ---
-        for (int i = bullets.size() - 1; i >= 0; i--) {
-            Bullet b = bullets.get(i);
+        updateBullets(dt);
+        if (prof != null) ts = prof.lap(TickProfiler.BULLETS, ts);
+
+        // --- pick exp ---
+        pickExp();
+        if (prof != null) prof.lap(TickProfiler.EXP, ts);
+    }
+
+    void updateBullets(double dt) {
+        int n = bullets.size();
+        if (bulletHit.length < n) bulletHit = new int[Math.max(n, bulletHit.length * 2)];
+        phaseDt = dt;
+        runPhase(n, moveBullets, bulletParallel);
+
+        // 依固定順序（由後往前）套用命中；swap-remove 搬過來的都是已經處理過的子彈
+        for (int i = n - 1; i >= 0; i--) {
+            int hit = bulletHit[i];
+            if (hit == CULLED) {
+                bullets.removeAt(i);
+                continue;
+            }
+            if (hit < 0) continue;
+
+            // 同一格的敵人可能已經被前面的子彈打死，重新查一次
+            int e = enemyGrid.firstAt(hit % cols, hit / cols);
+            if (e < 0) continue;
 
-            Enemy t = findNearestEnemyPixel(b.x, b.y);
-            if (t != null) {
-                double tx = centerX(t.gx), ty = centerY(t.gy);
-                double dx = tx - b.x, dy = ty - b.y;
+            enemies.hp[e] -= bullets.damage[i];
+            bullets.removeAt(i);
+
+            if (enemies.hp[e] <= 0) {
+                gs.kills++;
+                gs.score += 10;
+                expOrbs.add(enemies.gx[e], enemies.gy[e]);
+                events.publish(GameEvents.KILL, ticks, cellKey(enemies.gx[e], enemies.gy[e]), enemies.maxHp[e], gs.score);
+                removeEnemy(e);
+            }
+        }
+    }
+
+    /** homing + 位移 + 判斷命中哪一格；只讀敵人，只寫自己範圍內的子彈（包含鎖定的目標） */
+    private void moveBullets(int from, int to) {
+        double dt = phaseDt;
+        double[] bx = bullets.x, by = bullets.y, bvx = bullets.vx, bvy = bullets.vy;
+        for (int i = from; i < to; i++) {
+            bullets.prevX[i] = bx[i];
+            bullets.prevY[i] = by[i];
+
+            // 鎖定的目標還活著就繼續追，死了或時間到才重新找；沒有目標的也是等時間到
+            int t = enemies.resolve(bullets.target[i]);
+            bullets.retarget[i] -= dt;
+            boolean lost = t < 0 && bullets.target[i] != EnemyPool.NONE;
+            if (lost || bullets.retarget[i] <= 0) {
+                t = findNearestEnemyPixel(bx[i], by[i]);
+                bullets.target[i] = t >= 0 ? enemies.handle(t) : EnemyPool.NONE;
+                bullets.retarget[i] = gs.bulletRetargetInterval;
+            }
+            if (t >= 0) {
+                double tx = centerX(enemies.gx[t]), ty = centerY(enemies.gy[t]);
+                double dx = tx - bx[i], dy = ty - by[i];
                 double len = Math.hypot(dx, dy);
                 if (len > 0) {
-                    b.vx = (dx / len) * gs.bulletSpeed;
-                    b.vy = (dy / len) * gs.bulletSpeed;
+                    bvx[i] = (dx / len) * gs.bulletSpeed;
+                    bvy[i] = (dy / len) * gs.bulletSpeed;
                 }
             }
 
-            b.x += b.vx * dt;
-            b.y += b.vy * dt;
+            bx[i] += bvx[i] * dt;
+            by[i] += bvy[i] * dt;
 
-            if (b.x < -50 || b.x > W + 50 || b.y < -50 || b.y > H + 50) {
-                bullets.remove(i);
+            if (bx[i] < cullX0 || bx[i] > cullX1 || by[i] < cullY0 || by[i] > cullY1) {
+                bulletHit[i] = CULLED;
                 continue;
             }
 
-            for (int j = enemies.size() - 1; j >= 0; j--) {
-                Enemy e = enemies.get(j);
-                double ex = centerX(e.gx), ey = centerY(e.gy);
-
-                if (dist2(b.x, b.y, ex, ey) <= sq(12)) {
-                    e.hp -= b.damage;
-                    bullets.remove(i);
-
-                    if (e.hp <= 0) {
-                        enemies.remove(j);
-                        gs.kills++;
-                        gs.score += 10;
-                        expOrbs.add(new ExpOrb(e.gx, e.gy));
-                    }
-                    break;
-                }
-            }
+            // 命中半徑 <= cell/2（Arena 有檢查），只可能打到子彈所在格子上的敵人
+            int gx = (int) Math.floor(bx[i] / cell), gy = (int) Math.floor(by[i] / cell);
+            int e = enemyGrid.firstAt(gx, gy);
+            boolean hit = e >= 0 && dist2(bx[i], by[i], centerX(gx), centerY(gy)) <= sq(HIT_RADIUS);
+            bulletHit[i] = hit ? gy * cols + gx : -1;
         }
+    }
 
-        // --- pick exp ---
-        for (int i = expOrbs.size() - 1; i >= 0; i--) {
-            ExpOrb orb = expOrbs.get(i);
-            if (orb.gx == px && orb.gy == py) {
-                gs.exp++;
-                expOrbs.remove(i);
-                if (gs.exp >= gs.expToNext) levelUp();
-            }
+    /**
+     * 活動範圍外 flow field 是 -1，敵人不會動，所以只走活動範圍所在 chunk 裡的敵人（依 slot 順序，結果跟走全部一樣）；
+     * 大地圖上被玩家甩在遠處的敵人不用每一步都看一次。
+     */
+    private int collectStepSlots() {
+        int n = enemies.size();
+        if (stepSlots.length < n) {
+            stepSlots = new int[Math.max(n, stepSlots.length * 2)];
+            plannedCell = new int[stepSlots.length];
+        }
+        if (activeX0 == 0 && activeY0 == 0 && activeX1 == cols - 1 && activeY1 == rows - 1) {
+            for (int i = 0; i < n; i++) stepSlots[i] = i;
+            return n;
         }
+        return enemyGrid.collect(activeX0, activeY0, activeX1, activeY1, stepSlots);
+    }
+
+    /** 每隻敵人照 flow field 想走的下一格；佔位衝突留給依序套用時處理 */
+    private void planEnemies(int from, int to) {
+        for (int k = from; k < to; k++) {
+            int i = stepSlots[k];
+            plannedCell[k] = flow.next(enemies.gy[i] * cols + enemies.gx[i]);
+        }
+    }
+
+    private static void runPhase(int n, ParallelRange.Body body, ParallelRange parallel) {
+        if (parallel == null) body.run(0, n);
+        else parallel.run(n);
+    }
+
+    /** 開啟後敵人規劃與子彈更新會用 fork-join 平行算；同樣的 seed 結果跟單執行緒相同 */
+    public void setParallel(boolean on) {
+        setPool(on ? ForkJoinPool.commonPool() : null);
+    }
+
+    /** 指定平行用的 pool（null = 單執行緒）；測試用自己的 pool，單核心的機器上也會真的分給別的執行緒 */
+    void setPool(ForkJoinPool pool) {
+        planParallel = pool != null ? new ParallelRange(pool, PARALLEL_THRESHOLD, planEnemies) : null;
+        bulletParallel = pool != null ? new ParallelRange(pool, PARALLEL_THRESHOLD, moveBullets) : null;
+    }
+
+    /** 只看玩家所在的格子；一次撿到很多顆可能連升好幾級，多的經驗保留到下一級 */
+    void pickExp() {
+        int n = expOrbs.take(px, py);
+        if (n == 0) return;
+        events.publish(GameEvents.PICKUP, ticks, cellKey(px, py), n, 0);
+        gs.exp += n;
+        while (gs.exp >= gs.expToNext) levelUp();
     }
 
     private void levelUp() {
         gs.level++;
-        gs.exp = 0;
+        gs.exp -= gs.expToNext;
         gs.expToNext += 2;
+        events.publish(GameEvents.LEVEL_UP, ticks, gs.level, 0, 0);
 
         teammates.add(new GridPos(px, py));
 
-        // 抽卡（阻塞式 dialog）
-        List<Card> options = pick3Cards();
-        Card chosen = CardDialog.choose(owner, gs.level, options);
+        // 抽卡：選項現在就抽（rng 的順序跟什麼時候選無關），選擇排隊等玩家
+        pendingCards.addLast(pick3Cards());
+        if (pendingCards.size() == 1) cardOfferVersion++;
+        if (cardChooser != null) pickCard(cardChooser.choose(gs.level, pendingCards.peekFirst()));
+    }
+
+    /** 有還沒選的卡；這段期間 tick 不會前進 */
+    public boolean awaitingCard() { return !pendingCards.isEmpty(); }
+
+    /** 目前要選的三張，沒有則回傳空 list */
+    public List<Card> cardOptions() {
+        List<Card> o = pendingCards.peekFirst();
+        return o != null ? o : Collections.emptyList();
+    }
+
+    /** 目前這張之後還排了幾次升級 */
+    public int queuedCardPicks() { return Math.max(0, pendingCards.size() - 1); }
+
+    /** 選目前選項的第 index 張（-1 = 不選） */
+    public void pickCard(int index) {
+        List<Card> options = pendingCards.peekFirst();
+        if (options == null) return;
+        pickCard(index >= 0 && index < options.size() ? options.get(index) : null);
+    }
+
+    private void pickCard(Card chosen) {
+        List<Card> options = pendingCards.pollFirst();
+        if (options == null) return;
+        if (recorder != null) recorder.card(options.indexOf(chosen));
         if (chosen != null) {
             chosen.apply(gs);
             pickedCards.add(chosen.name());
         }
-          needClearInputOnResume = true;
+        events.publish(GameEvents.CARD, ticks, chosen != null ? cardPool.indexOf(chosen) : -1, gs.level, 0);
+        if (!pendingCards.isEmpty()) cardOfferVersion++;
     }
 
+    /** 從卡池抽三張不重複的：只對排列的前三格做 Fisher-Yates，不複製整個卡池 */
     private List<Card> pick3Cards() {
-        List<Card> copy = new ArrayList<>(cardPool);
-        Collections.shuffle(copy);
-        return copy.subList(0, Math.min(3, copy.size()));
+        int k = Math.min(3, cardOrder.length);
+        Card[] picked = new Card[k];
+        for (int i = 0; i < k; i++) {
+            int j = i + rng.nextInt(cardOrder.length - i);
+            int tmp = cardOrder[i]; cardOrder[i] = cardOrder[j]; cardOrder[j] = tmp;
+            picked[i] = cardPool.get(cardOrder[i]);
+        }
+        return Arrays.asList(picked);
     }
 
+    /** 存檔與歷史紀錄交給 RunPersistence */
     private void gameOver() {
         alive = false;
-        try {
-            mongo.saveRun(difficulty, gs.level, survivedSec, gs.kills, gs.score);
-            recentHistory = mongo.fetchRecentRuns(HISTORY_SHOW_N);
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            recentHistory = Collections.singletonList(
-                    new RunRecord(Instant.now().toString(), -1, -1, 0, 0, 0)
-            );
-        }
+        events.publish(GameEvents.GAME_OVER, ticks,
+                (long) gs.level << 32 | difficulty,
+                (long) gs.kills << 32 | (gs.score & 0xFFFFFFFFL),
+                Double.doubleToRawLongBits(survivedSec));
     }
 
+    private static long cellKey(int gx, int gy) { return (long) gx << 32 | gy; }
+
     // ===== AI / spawn / helpers =====
 
-    private void stepEnemyTowardPlayer(Enemy e) {
-        int dx = px - e.gx;
-        int dy = py - e.gy;
+    /** 照規劃好的格子走一步；下一格有別的敵人就換一條一樣近的路，都沒有就原地等 */
+    private void stepEnemyTowardPlayer(int i, int n) {
+        int c = enemies.gy[i] * cols + enemies.gx[i];
+        if (n < 0 || n == c) return;
+
+        if (blocked(n)) {
+            n = -1;
+            int d = flow.dist(c);
+            int cx = enemies.gx[i], cy = enemies.gy[i];
+            if (cy > 0 && flow.dist(c - cols) < d && !blocked(c - cols)) n = c - cols;
+            else if (cy < rows - 1 && flow.dist(c + cols) < d && !blocked(c + cols)) n = c + cols;
+            else if (cx > 0 && flow.dist(c - 1) < d && !blocked(c - 1)) n = c - 1;
+            else if (cx < cols - 1 && flow.dist(c + 1) < d && !blocked(c + 1)) n = c + 1;
+            if (n < 0) return;
+        }
+
+        int nx = n % cols, ny = n / cols;
+        enemies.gx[i] = nx; enemies.gy[i] = ny;
+        enemyGrid.move(i, nx, ny);
+    }
 
-        int nx = e.gx, ny = e.gy;
-        if (Math.abs(dx) >= Math.abs(dy)) nx += Integer.compare(dx, 0);
-        else ny += Integer.compare(dy, 0);
+    /** 玩家的格子永遠可以走進去 */
+    private boolean blocked(int cell) {
+        int gx = cell % cols, gy = cell / cols;
+        return enemyGrid.isOccupied(gx, gy) && !(gx == px && gy == py);
+    }
 
-        if (inBounds(nx, ny)) { e.gx = nx; e.gy = ny; }
+    private void removeEnemy(int i) {
+        int last = enemies.size() - 1;
+        enemyGrid.remove(i);
+        if (i != last) enemyGrid.relocate(last, i);
+        enemies.removeAt(i);
     }
 
     private void spawnEnemyAtBorder() {
         int side = rng.nextInt(4);
         int gx, gy;
 
+        // 生在活動範圍的邊上（地圖跟畫面一樣大時就是地圖邊界）
+        int aw = activeX1 - activeX0 + 1, ah = activeY1 - activeY0 + 1;
         switch (side) {
-            case 0: gx = rng.nextInt(COLS); gy = 0; break;
-            case 1: gx = COLS - 1; gy = rng.nextInt(ROWS); break;
-            case 2: gx = rng.nextInt(COLS); gy = ROWS - 1; break;
-            default: gx = 0; gy = rng.nextInt(ROWS); break;
+            case 0: gx = activeX0 + rng.nextInt(aw); gy = activeY0; break;
+            case 1: gx = activeX1; gy = activeY0 + rng.nextInt(ah); break;
+            case 2: gx = activeX0 + rng.nextInt(aw); gy = activeY1; break;
+            default: gx = activeX0; gy = activeY0 + rng.nextInt(ah); break;
         }
 
+        // 那格已經有敵人或是牆就這次不生
+        if (enemyGrid.isOccupied(gx, gy) || flow.isWall(gx, gy)) return;
+
         int timeBonus = (int)(survivedSec / 20.0) * 2;
         int baseHp = 3 + difficulty + timeBonus;
-        enemies.add(new Enemy(gx, gy, baseHp));
+        spawnEnemyAt(gx, gy, baseHp);
+    }
+
+    void spawnEnemyAt(int gx, int gy, int hp) {
+        int i = enemies.add(gx, gy, hp);
+        enemyGrid.add(i, gx, gy);
+    }
+
+    void addExpOrb(int gx, int gy) {
+        expOrbs.add(gx, gy);
+    }
+
+    void pushTrail(int x, int y) {
+        trail.push(x, y);
     }
 
-    private void spawnBullet(double sx, double sy, double tx, double ty) {
+    /** 從 (gx, gy) 朝最近的敵人開一槍，子彈直接鎖定那隻 */
+    private void fireFrom(int gx, int gy) {
+        int c = gy * cols + gx;
+        int target;
+        if (fireCacheStamp[c] == fireStamp) {
+            target = fireCacheTarget[c];
+        } else {
+            target = findNearestEnemyPixel(centerX(gx), centerY(gy));
+            fireCacheStamp[c] = fireStamp;
+            fireCacheTarget[c] = target;
+        }
+        if (target < 0) return;
+
+        int b = spawnBullet(centerX(gx), centerY(gy), centerX(enemies.gx[target]), centerY(enemies.gy[target]));
+        if (b >= 0) {
+            bullets.target[b] = enemies.handle(target);
+            bullets.retarget[b] = gs.bulletRetargetInterval;
+        }
+    }
+
+    /** 回傳子彈的 slot，起點就是終點時不生並回傳 -1；還沒鎖定目標，第一次更新時才找 */
+    int spawnBullet(double sx, double sy, double tx, double ty) {
         double vx = tx - sx;
         double vy = ty - sy;
         double len = Math.hypot(vx, vy);
-        if (len == 0) return;
+        if (len == 0) return -1;
         vx /= len; vy /= len;
 
-        bullets.add(new Bullet(sx, sy, vx * gs.bulletSpeed, vy * gs.bulletSpeed, gs.bulletDamage));
+        return bullets.add(sx, sy, vx * gs.bulletSpeed, vy * gs.bulletSpeed, gs.bulletDamage);
     }
 
-    private Enemy findNearestEnemyPixel(double sx, double sy) {
-        if (enemies.isEmpty()) return null;
-        Enemy best = null;
-        double bestD2 = Double.MAX_VALUE;
-        for (Enemy e : enemies) {
-            double ex = centerX(e.gx), ey = centerY(e.gy);
-            double d2 = dist2(sx, sy, ex, ey);
-            if (d2 < bestD2) { bestD2 = d2; best = e; }
-        }
-        return best;
+    /** 最近敵人的 slot，沒有敵人回傳 -1 */
+    int findNearestEnemyPixel(double sx, double sy) {
+        if (enemies.size() == 0) return -1;
+        return enemyGrid.nearest(sx, sy, activeX0, activeY0, activeX1, activeY1);
     }
 
-    private void updateTeammatesFollow() {
+    void updateTeammatesFollow() {
         if (teammates.isEmpty() || trail.isEmpty()) return;
-        GridPos[] arr = trail.toArray(new GridPos[0]);
-        int n = arr.length;
+        int n = trail.size();
 
+        // 第 i 個隊友站在玩家後面第 i+1 格
         for (int i = 0; i < teammates.size(); i++) {
-            int idx = n - 1 - (i + 1);
-            if (idx < 0) break;
-            teammates.get(i).x = arr[idx].x;
-            teammates.get(i).y = arr[idx].y;
+            if (i + 1 >= n) break;
+            int p = trail.fromTail(i + 1);
+            GridPos t = teammates.get(i);
+            t.x = TrailRing.unpackX(p);
+            t.y = TrailRing.unpackY(p);
         }
     }
 
-    public boolean inBounds(int gx, int gy) { return gx >= 0 && gx < COLS && gy >= 0 && gy < ROWS; }
-    public double centerX(int gx) { return gx * CELL + CELL / 2.0; }
-    public double centerY(int gy) { return gy * CELL + CELL / 2.0; }
+    /** 設定或移除牆，敵人路徑會馬上重算 */
+    public void setWall(int gx, int gy, boolean on) {
+        if (!inBounds(gx, gy) || (gx == px && gy == py)) return;
+        flow.setWall(gx, gy, on);
+        flow.compute(px, py, activeX0, activeY0, activeX1, activeY1);
+    }
+
+    public boolean isWall(int gx, int gy) { return flow.isWall(gx, gy); }
+
+    /** 玩家移動後：活動範圍是畫面可見範圍往外 margin 格，BFS 只算這一塊 */
+    private void updateActiveArea() {
+        int vx = arena.viewX(px), vy = arena.viewY(py);
+        activeX0 = Math.max(0, vx - arena.margin);
+        activeY0 = Math.max(0, vy - arena.margin);
+        activeX1 = Math.min(cols - 1, vx + arena.viewCols - 1 + arena.margin);
+        activeY1 = Math.min(rows - 1, vy + arena.viewRows - 1 + arena.margin);
+        cullX0 = activeX0 * cell - 50;
+        cullY0 = activeY0 * cell - 50;
+        cullX1 = (activeX1 + 1) * cell + 50;
+        cullY1 = (activeY1 + 1) * cell + 50;
+        flow.compute(px, py, activeX0, activeY0, activeX1, activeY1);
+    }
+    public int wallVersion() { return flow.wallVersion(); }
+
+    public boolean inBounds(int gx, int gy) { return gx >= 0 && gx < cols && gy >= 0 && gy < rows; }
+    public double centerX(int gx) { return gx * cell + cell / 2.0; }
+    public double centerY(int gy) { return gy * cell + cell / 2.0; }
 
     public static int clampInt(int v, int lo, int hi) { return Math.max(lo, Math.min(hi, v)); }
     public static double sq(double v) { return v * v; }
@@ -302,4 +671,223 @@ public class GameEngine {
     }
 
     public int getDifficulty() { return difficulty; }
+
+    /** 每個 tick 各階段的計時；null 就不量 */
+    public void setProfiler(TickProfiler profiler) { this.profiler = profiler; }
+
+    /** 從下一個 tick 開始錄影；要在第一個 tick 之前設定才能重播 */
+    public void setRecorder(ReplayRecorder recorder) { this.recorder = recorder; }
+    public ReplayRecorder getRecorder() { return recorder; }
+
+    /** 模擬狀態的 hash，用來檢查重播是否一致 */
+    public long stateHash() {
+        long h = 0xCBF29CE484222325L;
+        h = mix(h, px); h = mix(h, py); h = mix(h, ticks);
+        h = mix(h, Double.doubleToLongBits(moveCd)); h = mix(h, Double.doubleToLongBits(fireCd));
+        h = mix(h, Double.doubleToLongBits(enemyStepCd)); h = mix(h, Double.doubleToLongBits(spawnCd));
+        h = mix(h, gs.level); h = mix(h, gs.exp); h = mix(h, gs.kills); h = mix(h, gs.score);
+        h = mix(h, rng.getState());
+        for (int i = 0; i < enemies.size(); i++) {
+            h = mix(h, enemies.gx[i]); h = mix(h, enemies.gy[i]); h = mix(h, enemies.hp[i]);
+        }
+        for (int i = 0; i < bullets.size(); i++) {
+            h = mix(h, Double.doubleToLongBits(bullets.x[i])); h = mix(h, Double.doubleToLongBits(bullets.y[i])); h = mix(h, bullets.target[i]);
+        }
+        for (int i = 0; i < expOrbs.size(); i++) {
+            h = mix(h, expOrbs.gx(i)); h = mix(h, expOrbs.gy(i)); h = mix(h, expOrbs.count(i));
+        }
+        for (GridPos t : teammates) { h = mix(h, t.x); h = mix(h, t.y); }
+        return h;
+    }
+
+    private static long mix(long h, long v) {
+        return (h ^ v) * 0x100000001B3L;
+    }
+
+    // ===== snapshot =====
+
+    private static final int SNAPSHOT_MAGIC = 0x534E4B53;  // "SNKS"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    /**
+     * 把整個模擬狀態寫進 b（從目前位置開始；b 會被設成 little-endian，陣列整段複製）。
+     * 空間不夠會丟 BufferOverflowException。尋路表、格子索引這些可以重算的不寫。要在兩個 tick 之間呼叫。
+     */
+    public void writeSnapshot(ByteBuffer b) {
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION);
+        b.putInt(arena.cols).putInt(arena.rows).putInt(arena.cell)
+                .putInt(arena.viewCols).putInt(arena.viewRows).putInt(arena.margin);
+        b.putInt(difficulty).putLong(seed).putLong(rng.getState());
+        b.putLong(ticks).putDouble(survivedSec).put((byte) (alive ? 1 : 0));
+        b.putInt(px).putInt(py);
+        b.putDouble(moveCd).putDouble(fireCd).putDouble(enemyStepCd).putDouble(spawnCd);
+        gs.write(b);
+
+        enemies.write(b);
+        bullets.write(b);
+        expOrbs.write(b);
+        flow.writeWalls(b);
+        trail.write(b);
+        b.putInt(teammates.size());
+        for (int k = 0; k < teammates.size(); k++) b.putInt(teammates.get(k).x).putInt(teammates.get(k).y);
+
+        // 卡片都存卡池裡的 index
+        b.putInt(cardOrder.length);
+        for (int c : cardOrder) b.putInt(c);
+        b.putInt(pendingCards.size());
+        for (List<Card> options : pendingCards) {
+            b.putInt(options.size());
+            for (Card c : options) b.putInt(cardPool.indexOf(c));
+        }
+        b.putInt(pickedCards.size());
+        for (int k = 0; k < pickedCards.size(); k++) b.putInt(cardIndex(pickedCards.get(k)));
+    }
+
+    /** 從 writeSnapshot 寫的資料建一個引擎；之後給同樣的輸入，結果跟原本那場一樣 */
+    public static GameEngine readSnapshot(ByteBuffer b, CardChooser cardChooser, RunRepository runs) throws IOException {
+        Arena arena = readSnapshotArena(b);
+        int difficulty = b.getInt();
+        long seed = b.getLong();
+
+        GameEngine e = new GameEngine(arena, difficulty, cardChooser, runs, seed);
+        try {
+            e.restore(b);
+        } catch (IOException | RuntimeException ex) {
+            e.close();
+            throw ex;
+        }
+        return e;
+    }
+
+    /**
+     * 原地接著玩 snapshot 裡的那場（重複使用這個引擎，地圖大小要一樣）。
+     * 地圖不合在改任何狀態前就丟 IOException；讀到一半失敗的話狀態不完整，要再 reset。
+     */
+    public void restoreSnapshot(ByteBuffer b) throws IOException {
+        Arena a = readSnapshotArena(b);
+        if (a.cols != arena.cols || a.rows != arena.rows || a.cell != arena.cell
+                || a.viewCols != arena.viewCols || a.viewRows != arena.viewRows || a.margin != arena.margin) {
+            throw new IOException("snapshot arena " + a.cols + "x" + a.rows + " does not match " + cols + "x" + rows);
+        }
+        int difficulty = b.getInt();
+        long seed = b.getLong();
+        reset(difficulty, seed);
+        restore(b);
+    }
+
+    private static Arena readSnapshotArena(ByteBuffer b) throws IOException {
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        if (b.getInt() != SNAPSHOT_MAGIC) throw new IOException("not a snapshot");
+        if (b.getInt() != SNAPSHOT_VERSION) throw new IOException("unsupported snapshot version");
+        try {
+            return new Arena(b.getInt(), b.getInt(), b.getInt(), b.getInt(), b.getInt(), b.getInt());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("bad snapshot arena: " + e.getMessage());
+        }
+    }
+
+    private void restore(ByteBuffer b) throws IOException {
+        rng.setState(b.getLong());
+        ticks = b.getLong();
+        survivedSec = b.getDouble();
+        alive = b.get() != 0;
+        px = b.getInt();
+        py = b.getInt();
+        moveCd = b.getDouble(); fireCd = b.getDouble(); enemyStepCd = b.getDouble(); spawnCd = b.getDouble();
+        gs.read(b);
+
+        enemies.read(b);
+        enemyGrid.clear();
+        for (int i = 0; i < enemies.size(); i++) enemyGrid.add(i, enemies.gx[i], enemies.gy[i]);
+        bullets.read(b);
+        expOrbs.read(b);
+        flow.readWalls(b);
+        trail.read(b);
+        teammates.clear();
+        for (int k = b.getInt(); k > 0; k--) teammates.add(new GridPos(b.getInt(), b.getInt()));
+
+        if (b.getInt() != cardOrder.length) throw new IOException("snapshot card pool does not match");
+        for (int k = 0; k < cardOrder.length; k++) cardOrder[k] = b.getInt();
+        pendingCards.clear();
+        for (int k = b.getInt(); k > 0; k--) {
+            Card[] options = new Card[b.getInt()];
+            for (int j = 0; j < options.length; j++) options[j] = cardPool.get(b.getInt());
+            pendingCards.addLast(Arrays.asList(options));
+        }
+        pickedCards.clear();
+        for (int k = b.getInt(); k > 0; k--) {
+            int c = b.getInt();
+            if (c >= 0) pickedCards.add(cardPool.get(c).name());
+        }
+        cardOfferVersion++;
+
+        updateActiveArea();
+    }
+
+    private int cardIndex(String name) {
+        for (int i = 0; i < cardPool.size(); i++) if (cardPool.get(i).name().equals(name)) return i;
+        return -1;
+    }
+
+    public EnemyView enemies() { return enemies; }
+    public BulletView bullets() { return bullets; }
+    public ExpOrbView expOrbs() { return expOrbs; }
+
+    // ===== 網路（GameServer 擷取、GameClient 套用） =====
+
+    /** slot i 的敵人 handle（EnemyPool.handle） */
+    int enemyHandle(int i) { return enemies.handle(i); }
+
+    /** 目前選項的第 k 張在卡池裡的 index */
+    int cardOptionIndex(int k) { return cardPool.indexOf(pendingCards.peekFirst().get(k)); }
+
+    /**
+     * client 端的「傀儡」引擎：不跑 tick，只把伺服器送來的狀態放進來給 GamePanel 畫。
+     * 子彈沒有上一步的位置，畫面不內插。
+     */
+    void applyNetState(NetState s) {
+        px = s.px;
+        py = s.py;
+        survivedSec = s.survivedMs / 1000.0;
+        alive = s.alive;
+        gs.level = s.level;
+        gs.exp = s.exp;
+        gs.expToNext = s.expToNext;
+        gs.kills = s.kills;
+        gs.score = s.score;
+
+        enemies.clear();
+        for (int i = 0; i < s.enemyCount; i++) {
+            int e = enemies.add(s.eGx[i], s.eGy[i], s.eMaxHp[i]);
+            enemies.hp[e] = s.eHp[i];
+        }
+        bullets.clear();
+        for (int i = 0; i < s.bulletCount; i++)
+            bullets.add(s.bx[i] / NetState.QUANT, s.by[i] / NetState.QUANT, 0, 0, 0);
+        expOrbs.clear();
+        for (int i = 0; i < s.orbCount; i++) {
+            int c = NetState.orbCell(s.orbs[i]);
+            expOrbs.add(c % cols, c / cols, NetState.orbCount(s.orbs[i]));
+        }
+        while (teammates.size() > s.mateCount) teammates.remove(teammates.size() - 1);
+        for (int k = 0; k < s.mateCount; k++) {
+            if (k < teammates.size()) { teammates.get(k).x = s.mx[k]; teammates.get(k).y = s.my[k]; }
+            else teammates.add(new GridPos(s.mx[k], s.my[k]));
+        }
+
+        // 選項換了才換，畫面用 cardOfferVersion 判斷要不要重畫
+        List<Card> cur = pendingCards.peekFirst();
+        boolean same = cur == null ? s.cardCount == 0 : cur.size() == s.cardCount;
+        for (int k = 0; same && k < s.cardCount; k++) same = cur.get(k) == cardPool.get(s.cards[k]);
+        if (!same) {
+            pendingCards.clear();
+            if (s.cardCount > 0) {
+                Card[] options = new Card[s.cardCount];
+                for (int k = 0; k < options.length; k++) options[k] = cardPool.get(s.cards[k]);
+                pendingCards.add(Arrays.asList(options));
+            }
+            cardOfferVersion++;
+        }
+    }
 }
@@ -0,0 +1,187 @@
+package game;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 遊戲事件（擊殺、撿經驗、升級、選卡、game over）的單一生產者環狀 buffer。
+ * 引擎在 tick 裡 publish，只寫預先配置好的 long[]，不配置記憶體也不會等；
+ * 每個訂閱者有自己的執行緒，一次把累積的事件整批讀完；沒事做時 park 著，publish 時才叫醒。
+ *
+ * 每個事件佔 4 個 long：[type << 56 | tick, a, b, c]，a / b / c 的意思看 type。
+ * buffer 滿了（最慢的訂閱者落後一整圈）就丟掉新事件並計數，絕不讓 tick 等。
+ */
+public final class GameEvents {
+
+    /** a = gx << 32 | gy，b = 敵人 maxHp，c = 擊殺後的分數 */
+    public static final int KILL = 1;
+    /** a = gx << 32 | gy，b = 顆數 */
+    public static final int PICKUP = 2;
+    /** a = 新等級 */
+    public static final int LEVEL_UP = 3;
+    /** a = 卡池裡的 index（-1 = 沒選），b = 等級 */
+    public static final int CARD = 4;
+    /** a = level << 32 | difficulty，b = kills << 32 | score，c = survivedSec 的 double bits */
+    public static final int GAME_OVER = 5;
+    /** 原地開始新的一場（GameEngine.reset），a = 新的 runGeneration */
+    public static final int RESET = 6;
+
+    public interface Handler {
+        void onEvent(int type, long tick, long a, long b, long c);
+
+        /** 一批事件處理完 */
+        default void onBatchEnd() {}
+    }
+
+    private static final int STRIDE = 4;
+    private static final int SPIN = 50;  // 沒事做時先 yield 幾次再 park
+    private static final long TICK_MASK = (1L << 56) - 1;
+
+    private final int capacity;
+    private final int mask;
+    private final long[] buf;
+    private final AtomicLong cursor = new AtomicLong();  // 下一個要寫的序號；寫完 payload 才前進
+    private long cachedMin = 0;                          // 只有生產者用
+    private long dropped = 0;
+    private volatile Subscription[] subs = new Subscription[0];
+
+    /** capacity 會被調成 2 的次方 */
+    public GameEvents(int capacity) {
+        int c = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.capacity = c;
+        this.mask = c - 1;
+        this.buf = new long[c * STRIDE];
+    }
+
+    // ===== producer（tick 的執行緒）=====
+
+    public void publish(int type, long tick, long a, long b, long c) {
+        long seq = cursor.get();
+        if (seq - cachedMin >= capacity) {
+            cachedMin = minSequence(seq);
+            if (seq - cachedMin >= capacity) {
+                dropped++;
+                return;
+            }
+        }
+        int i = (int) (seq & mask) * STRIDE;
+        buf[i] = (long) type << 56 | (tick & TICK_MASK);
+        buf[i + 1] = a;
+        buf[i + 2] = b;
+        buf[i + 3] = c;
+        // volatile 寫，跟之後讀 waiting 配對：訂閱者說要睡之後一定看得到這筆，或是被這裡叫醒
+        cursor.set(seq + 1);
+        for (Subscription s : subs) {
+            if (s.waiting) {
+                s.waiting = false;
+                LockSupport.unpark(s.thread);
+            }
+        }
+    }
+
+    /** buffer 滿了丟掉的事件數 */
+    public long dropped() { return dropped; }
+
+    private long minSequence(long fallback) {
+        long min = fallback;
+        for (Subscription s : subs) min = Math.min(min, s.seq.get());
+        return min;
+    }
+
+    // ===== consumers =====
+
+    /** 從現在開始訂閱，handler 在自己的 daemon 執行緒上跑 */
+    public synchronized Subscription subscribe(String name, Handler handler) {
+        Subscription s = new Subscription(name, handler, cursor.get());
+        Subscription[] next = Arrays.copyOf(subs, subs.length + 1);
+        next[subs.length] = s;
+        subs = next;
+        s.thread.start();
+        return s;
+    }
+
+    private synchronized void remove(Subscription s) {
+        Subscription[] cur = subs;
+        for (int k = 0; k < cur.length; k++) {
+            if (cur[k] != s) continue;
+            Subscription[] next = new Subscription[cur.length - 1];
+            System.arraycopy(cur, 0, next, 0, k);
+            System.arraycopy(cur, k + 1, next, k, cur.length - k - 1);
+            subs = next;
+            return;
+        }
+    }
+
+    public final class Subscription implements AutoCloseable {
+        private final Handler handler;
+        private final AtomicLong seq;
+        private final Thread thread;
+        private volatile boolean running = true;
+        private volatile boolean waiting = false;  // 要 park 了（或已經 park），publish 看到就 unpark
+
+        private Subscription(String name, Handler handler, long start) {
+            this.handler = handler;
+            this.seq = new AtomicLong(start);
+            this.thread = new Thread(this::loop, "events-" + name);
+            thread.setDaemon(true);
+        }
+
+        private void loop() {
+            int idle = 0;
+            while (true) {
+                boolean stop = !running;  // 先讀，確保關閉前 publish 的都會處理到
+                if (drain()) {
+                    idle = 0;
+                } else if (stop) {
+                    return;
+                } else if (++idle < SPIN) {
+                    Thread.yield();  // 事件常常一次來好幾個，先讓出 CPU 一下
+                } else {
+                    // 先說要睡再檢查一次：之後才 publish 的會看到 waiting 並 unpark
+                    waiting = true;
+                    if (running && cursor.get() == seq.get()) LockSupport.park(this);
+                    waiting = false;
+                }
+            }
+        }
+
+        /** 讀完目前看得到的事件；有讀到回傳 true */
+        private boolean drain() {
+            long from = seq.get();
+            long to = cursor.get();
+            if (from == to) return false;
+            for (long s = from; s < to; s++) {
+                int i = (int) (s & mask) * STRIDE;
+                long h = buf[i];
+                try {
+                    handler.onEvent((int) (h >>> 56), h & TICK_MASK, buf[i + 1], buf[i + 2], buf[i + 3]);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            seq.lazySet(to);
+            try {
+                handler.onBatchEnd();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            return true;
+        }
+
+        /** 處理完剩下的事件再停（最多等 timeoutMs） */
+        public void close(long timeoutMs) {
+            running = false;
+            LockSupport.unpark(thread);
+            try {
+                thread.join(timeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            remove(this);
+        }
+
+        @Override
+        public void close() { close(1000); }
+    }
+}
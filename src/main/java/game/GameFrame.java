@@ -1,17 +1,56 @@
 package game;
 
+import ui.DifficultyDialog;
+
 import javax.swing.*;
+import java.io.IOException;
 
 public class GameFrame extends JFrame {
     public GameFrame(int difficulty) {
         super("snakeGame");
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        init(new GamePanel(difficulty, this));
+    }
+
+    public GameFrame(GameEngine engine) {
+        super("snakeGame");
+        init(new GamePanel(engine, this));
+    }
 
-        GamePanel panel = new GamePanel(difficulty, this);
+    public GameFrame(GameClient client) {
+        super("snakeGame");
+        init(new GamePanel(client, this));
+    }
+
+    private void init(GamePanel panel) {
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setContentPane(panel);
         pack();
         setLocationRelativeTo(null);
 
         panel.start();
     }
+
+    /**
+     * -Dsnake.connect=host:port 時連到 GameServer；
+     * 不然有上一場沒玩完的 checkpoint 就先問要不要接著玩，再不然選難度開新的一場
+     */
+    public static GameFrame create() {
+        String connect = System.getProperty("snake.connect");
+        if (connect != null) {
+            try {
+                return new GameFrame(GameClient.connect(connect, true));
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[GameFrame] cannot connect to " + connect + ": " + e);
+            }
+        }
+        Checkpoint.Saved saved = Checkpoint.peek(Checkpoint.defaultFile());
+        if (saved != null && DifficultyDialog.askResume(saved.difficulty, saved.level, saved.survivedSec)) {
+            try {
+                return new GameFrame(GameEngine.resume(saved.data));
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        return new GameFrame(DifficultyDialog.askDifficulty());
+    }
 }
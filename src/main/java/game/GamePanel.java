@@ -1,60 +1,175 @@
 package game;
 
-import entities.*;
-
+import cards.Card;
+import data.RunRepositories;
 import ui.DifficultyDialog;
+import entities.*;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class GamePanel extends JPanel {
 
-    private static final int CELL = 32;
-    private static final int COLS = 28;
-    private static final int ROWS = 18;
-    private static final int W = COLS * CELL;
-    private static final int H = ROWS * CELL;
+    private static final int HUD_H = 32;
+
+    // 共用的顏色與字型，畫面每幀不再 new
+    private static final Color COLOR_BG = new Color(0x10, 0x12, 0x14);
+    private static final Color COLOR_GRID = new Color(255, 255, 255, 18);
+    private static final Color COLOR_WALL = new Color(0x3A, 0x3F, 0x47);
+    private static final Color COLOR_HP_BG = new Color(0, 0, 0, 140);
+    private static final Color COLOR_HP_FILL = new Color(0x45, 0xE0, 0x4B);
+    private static final Color COLOR_HP_BORDER = new Color(255, 255, 255, 90);
+    private static final Color COLOR_SHADE = new Color(0, 0, 0, 170);
+    private static final Color COLOR_TITLE = new Color(0xFF5A5A);
+    private static final Color COLOR_TEXT_DIM = new Color(255, 255, 255, 220);
+    private static final Font FONT_HUD = new Font(Font.DIALOG, Font.BOLD, 16);
+    private static final Font FONT_TITLE = new Font(Font.DIALOG, Font.BOLD, 52);
+    private static final Font FONT_RUN = new Font(Font.DIALOG, Font.BOLD, 20);
+    private static final Font FONT_HEADER = new Font(Font.DIALOG, Font.PLAIN, 18);
+    private static final Font FONT_LINE = new Font(Font.DIALOG, Font.PLAIN, 16);
+    private static final Color COLOR_CARD_BG = new Color(0x22, 0x26, 0x2C, 235);
+    private static final Color COLOR_CARD_BORDER = new Color(255, 255, 255, 120);
+    private static final Font FONT_TITLE_SMALL = new Font(Font.DIALOG, Font.BOLD, 30);
+    private static final Font FONT_ORB = new Font(Font.DIALOG, Font.BOLD, 11);
+    private static final String[] ORB_LABELS = new String[100];
+    static {
+        for (int i = 0; i < ORB_LABELS.length; i++) ORB_LABELS[i] = Integer.toString(i);
+    }
+    private static final Font FONT_STATS = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color COLOR_STATS_BG = new Color(0, 0, 0, 160);
 
-    private static final int TICK_MS = 16;
+    private static final int RENDER_MS = 16;
+    private static final int BG_MARGIN = 8;  // 背景比畫面每邊多畫幾格，鏡頭在這範圍內移動只要換貼上的位置
+    private static final int MAX_STEPS_PER_FRAME = 8;  // 追進度上限，太慢就直接丟掉落後的時間
+    private static final long CHECKPOINT_NS = (long) (Checkpoint.PERIOD_SEC * 1_000_000_000L);
+    // replay：-Dsnake.replays=N 錄影並只留最近 N 個檔案（預設 0 = 不錄）
+    private static final int KEEP_REPLAYS = Integer.getInteger("snake.replays", 0);
 
     private final JFrame owner;
     private final GameEngine engine;
 
+    // 連線模式：engine 是 client 的傀儡引擎，狀態從伺服器來，輸入送回去（null = 本機自己跑）
+    private final GameClient client;
+    private int pendingPick = -1;
+
+    // 地圖可能比畫面大：畫面（viewW × viewH）跟著玩家捲動，camCol / camRow 是畫面左上角的格子
+    private final Arena arena;
+    private final int cell, viewW, viewH;
+    private int camCol, camRow;
+
     private boolean up, down, left, right;
 
     private long lastNs = 0;
+    private double accumulator = 0;
+    private double alpha = 0;           // 畫面在上一步與這一步之間的位置（0~1）
+    private boolean renderedDead = false;
+    private int renderedHistory = 0;
     private Timer timer;
 
-    // sprites
-    private final SpriteStore sprites = new SpriteStore();
-    private final Image playerImg;
-    private final Image enemyImg;
-    private final Image mateImg;
-    private final Image bulletImg;
-    private final Image expImg;
+    // 當機還原：每 CHECKPOINT_NS 寫一次，game over 時清掉（null = 開不了檔案）
+    private final Checkpoint checkpoint;
+    private long lastCheckpointNs = System.nanoTime();
+
+    // profiler（F3 顯示）
+    private static final long PROFILE_WINDOW_NS = 500_000_000L;
+    private static final int STATS_W = 330;
+    private final TickProfiler profiler = new TickProfiler();
+    private boolean showStats = false;
+    private BufferedImage statsLayer;
+
+    // 啟動時間：panel 建立（或重新開始）到第一幀畫出來，各 log 一次
+    private long startedNs = System.nanoTime();
+    private boolean firstFrameLogged = !Boolean.getBoolean("snake.startupLog");  // 要看啟動時間才印
+
+    // 選卡畫面
+    private BufferedImage cardLayer;
+    private int cardVersion = -1;
+    private int statsVersion = -1;
+
+    // layers
+    private VolatileImage background;  // bgCols × bgRows 格，左上角是 (bgCol, bgRow)
+    private final int bgCols, bgRows;
+    private int backgroundWalls = -1, bgCol = -1, bgRow = -1;
+    private BufferedImage hud;
+    private int hudLevel, hudExp, hudExpToNext, hudTeam, hudSec, hudKills, hudScore;
 
+    // sprites
+    private final SpriteStore sprites = new SpriteStore(SpriteStore.defaultConfiguration());
+    private final SpriteStore.Sprite playerImg;
+    private final SpriteStore.Sprite enemyImg;
+    private final SpriteStore.Sprite mateImg;
+    private final SpriteStore.Sprite bulletImg;
+    private final SpriteStore.Sprite expImg;
+
+    /** 新的一場（-Dsnake.replays 有開就錄 replay） */
     public GamePanel(int difficulty, JFrame owner) {
-        this.owner = owner;
-        this.engine = new GameEngine(difficulty, owner);
+        this(new GameEngine(difficulty), owner);
+        engine.setRecorder(newRecorder(engine));
+    }
 
-        playerImg = sprites.loadAndScale("assets/player.png", 50, 50);
-        enemyImg  = sprites.loadAndScale("assets/enemy.png", 50, 50);
-        mateImg   = sprites.loadAndScale("assets/teammate.png", 50, 50);
-        bulletImg = sprites.loadAndScale("assets/bullet.png", 20, 20);
-        expImg    = sprites.loadAndScale("assets/exp.png", 40, 40);
+    /** 用現成的引擎，例如從 checkpoint 接著玩的（replay 要從第一個 tick 開始錄，所以不錄） */
+    public GamePanel(GameEngine engine, JFrame owner) {
+        this(engine, null, owner);
+    }
 
-        setPreferredSize(new Dimension(W, H));
-        setBackground(new Color(0x10, 0x12, 0x14));
+    /** 連到 GameServer：畫伺服器送來的狀態（不存 checkpoint、不錄 replay） */
+    public GamePanel(GameClient client, JFrame owner) {
+        this(client.puppet(), client, owner);
+    }
+
+    private GamePanel(GameEngine engine, GameClient client, JFrame owner) {
+        this.owner = owner;
+        this.engine = engine;
+        this.client = client;
+        this.checkpoint = client == null ? openCheckpoint() : null;
+        engine.setProfiler(profiler);
+        this.arena = engine.arena;
+        this.cell = arena.cell;
+        this.viewW = arena.viewWidth;
+        this.viewH = arena.viewHeight;
+        this.bgCols = Math.min(arena.cols, arena.viewCols + 2 * BG_MARGIN);
+        this.bgRows = Math.min(arena.rows, arena.viewRows + 2 * BG_MARGIN);
+
+        sprites.loadAssets();
+        sprites.request("player", 50, 50);
+        sprites.request("enemy", 50, 50);
+        sprites.request("teammate", 50, 50);
+        sprites.request("bullet", 20, 20);
+        sprites.request("exp", 40, 40);
+        sprites.build();
+
+        playerImg = sprites.get("player", 50, 50);
+        enemyImg  = sprites.get("enemy", 50, 50);
+        mateImg   = sprites.get("teammate", 50, 50);
+        bulletImg = sprites.get("bullet", 20, 20);
+        expImg    = sprites.get("exp", 40, 40);
+
+        setPreferredSize(new Dimension(viewW, viewH));
+        setBackground(COLOR_BG);
         setFocusable(true);
 
         setupKeyBindings();
     }
 
     public void start() {
+        // frame 顯示後才能建立 BufferStrategy，之後每幀主動畫
+        if (owner.isDisplayable()) owner.createBufferStrategy(2);
         requestFocusInWindow();
         lastNs = System.nanoTime();
-        timer = new Timer(TICK_MS, e -> tick());
+        timer = new Timer(RENDER_MS, e -> tick());
         timer.start();
     }
 
@@ -65,134 +180,428 @@ public class GamePanel extends JPanel {
 
     private void tick() {
         long now = System.nanoTime();
-        double dt = (now - lastNs) / 1_000_000_000.0;
-        lastNs = now;
+        if (client != null) pollServer();
+        else simulate(now);
+
+        // 死掉後畫面是靜止的，只有歷史紀錄更新時才重畫
+        int hv = engine.historyVersion;
+        if (engine.alive || !renderedDead || hv != renderedHistory) {
+            if (!engine.alive && !renderedDead) {
+                saveReplay();
+                if (checkpoint != null) checkpoint.clear();
+            }
+            renderedDead = !engine.alive;
+            renderedHistory = hv;
+            renderFrame();
+        }
+        profiler.rollEvery(PROFILE_WINDOW_NS);
+    }
 
-        engine.tick(dt, up, down, left, right);
-        if (engine.needClearInputOnResume) {
-            clearInputFlags();
-            engine.needClearInputOnResume = false;
+    private void simulate(long now) {
+        accumulator += (now - lastNs) / 1_000_000_000.0;
+        lastNs = now;
 
-            // 重新拿回焦點，避免鍵盤事件沒回來
-            requestFocusInWindow();
+        // 固定步長模擬：timer 抖動不會影響冷卻時間，慢的一幀也不會變成一個超大的 dt
+        int steps = 0;
+        while (accumulator >= GameEngine.SIM_DT && steps < MAX_STEPS_PER_FRAME) {
+            // 選卡時模擬暫停，畫面照常更新；等待的時間不補跑
+            if (engine.awaitingCard()) {
+                accumulator = 0;
+                break;
+            }
+            engine.tick(GameEngine.SIM_DT, up, down, left, right);
+            accumulator -= GameEngine.SIM_DT;
+            steps++;
+        }
+        if (accumulator >= GameEngine.SIM_DT) accumulator = 0;
+        alpha = accumulator / GameEngine.SIM_DT;
+
+        if (engine.alive && checkpoint != null && now - lastCheckpointNs >= CHECKPOINT_NS) {
+            long t0 = System.nanoTime();
+            checkpoint.save(engine);
+            profiler.lap(TickProfiler.CHECKPOINT, t0);
+            lastCheckpointNs = now;
+        }
+    }
 
-            // 重置時間，避免 dt 因為對話框阻塞而暴衝
-            lastNs = System.nanoTime();
+    /** 連線模式：收伺服器的狀態，送這一幀的方向鍵與選卡（觀戰的話伺服器不理） */
+    private void pollServer() {
+        try {
+            client.poll();
+            int flags = (up ? InputPolicy.UP : 0) | (down ? InputPolicy.DOWN : 0)
+                    | (left ? InputPolicy.LEFT : 0) | (right ? InputPolicy.RIGHT : 0);
+            client.sendInput(flags, pendingPick);
+            pendingPick = -1;
+        } catch (IOException e) {
+            e.printStackTrace();
+            restartWithDifficultySelect();
+            return;
         }
-        
-        repaint();
+        alpha = 1;  // 子彈沒有上一步的位置可以內插
     }
 
+    // ===== Rendering =====
+
+    /** Swing 被動重畫（第一次顯示、視窗被遮住後露出）；平常由 tick 主動畫 */
     @Override
     protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
+        long t0 = System.nanoTime();
         Graphics2D g2 = (Graphics2D) g.create();
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        render(g2);
+        g2.dispose();
+        profiler.lap(TickProfiler.PAINT, t0);
+        logFirstFrame();
+    }
 
-        drawGrid(g2);
+    /** 用 frame 的 BufferStrategy 主動畫一幀；拿不到就退回 repaint() */
+    private void renderFrame() {
+        profiler.frame();
+        BufferStrategy bs = owner.getBufferStrategy();
+        if (bs == null || !isShowing()) {
+            repaint();
+            return;
+        }
 
-        // HUD
-        g2.setColor(Color.WHITE);
-        g2.setFont(g2.getFont().deriveFont(Font.BOLD, 16f));
-        String hud = String.format(
-                "snakeGame | Lv:%d EXP:%d/%d Team:%d Diff:%d Time:%s | K:%d Score:%d",
-                engine.gs.level, engine.gs.exp, engine.gs.expToNext,
-                engine.teammates.size(), engine.getDifficulty(),
-                formatTime(engine.survivedSec), engine.gs.kills, engine.gs.score
-        );
-        g2.drawString(hud, 12, 22);
+        long t0 = System.nanoTime();
+        // BufferStrategy 的座標是整個 frame（含邊框），要移到 panel 的位置
+        Point origin = SwingUtilities.convertPoint(this, 0, 0, owner);
+        do {
+            do {
+                Graphics2D g2 = (Graphics2D) bs.getDrawGraphics();
+                g2.translate(origin.x, origin.y);
+                g2.clipRect(0, 0, getWidth(), getHeight());
+                render(g2);
+                g2.dispose();
+            } while (bs.contentsRestored());
+            bs.show();
+        } while (bs.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+        profiler.lap(TickProfiler.PAINT, t0);
+        logFirstFrame();
+    }
+
+    private void logFirstFrame() {
+        if (firstFrameLogged) return;
+        firstFrameLogged = true;
+        System.out.printf("[GamePanel] first frame %.1f ms after start, %d ms after JVM start (run store %s)%n",
+                (System.nanoTime() - startedNs) / 1e6, ManagementFactory.getRuntimeMXBean().getUptime(),
+                RunRepositories.sharedReady() ? "ready" : "still starting");
+    }
 
-        // exp
-        for (ExpOrb orb : engine.expOrbs)
-            drawCentered(g2, expImg, engine.centerX(orb.gx), engine.centerY(orb.gy));
+    private void render(Graphics2D g2) {
+        camCol = arena.viewX(engine.px);
+        camRow = arena.viewY(engine.py);
+
+        // 背景層：格線只畫一次，之後依鏡頭位置貼上
+        drawBackground(g2);
+
+        // 實體層：世界座標，移到鏡頭位置；畫面外的都不畫
+        int camX = camCol * cell, camY = camRow * cell;
+        g2.translate(-camX, -camY);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+
+        // exp：只掃畫面裡的格子；一格只畫一顆，合併的數量標在右下角
+        ExpOrbView orbs = engine.expOrbs();
+        g2.setFont(FONT_ORB);
+        for (int gy = camRow; gy < camRow + arena.viewRows; gy++) {
+            for (int gx = camCol; gx < camCol + arena.viewCols; gx++) {
+                int n = orbs.countAt(gx, gy);
+                if (n == 0) continue;
+                drawCentered(g2, expImg, engine.centerX(gx), engine.centerY(gy));
+                if (n > 1) {
+                    g2.setColor(Color.WHITE);
+                    g2.drawString(n < ORB_LABELS.length ? ORB_LABELS[n] : "99+", gx * cell + cell / 2 + 6, (gy + 1) * cell - 3);
+                }
+            }
+        }
 
         // bullets
-        for (Bullet b : engine.bullets)
-            drawCentered(g2, bulletImg, b.x, b.y);
+        int margin = cell;  // sprite 比格子大一點，邊緣外一格也畫
+        double vx0 = camX - margin, vy0 = camY - margin, vx1 = camX + viewW + margin, vy1 = camY + viewH + margin;
+        BulletView bullets = engine.bullets();
+        for (int i = 0; i < bullets.size(); i++) {
+            double bx = bullets.prevX(i) + (bullets.x(i) - bullets.prevX(i)) * alpha;
+            double by = bullets.prevY(i) + (bullets.y(i) - bullets.prevY(i)) * alpha;
+            if (bx < vx0 || bx > vx1 || by < vy0 || by > vy1) continue;
+            drawCentered(g2, bulletImg, bx, by);
+        }
 
         // enemies
-        for (Enemy e : engine.enemies) {
-            drawCentered(g2, enemyImg, engine.centerX(e.gx), engine.centerY(e.gy));
-            drawHpBar(g2, engine.centerX(e.gx), engine.centerY(e.gy) - 20, 30, 6, e.hp, e.maxHp);
+        EnemyView enemies = engine.enemies();
+        for (int i = 0; i < enemies.size(); i++) {
+            if (!inView(enemies.gx(i), enemies.gy(i))) continue;
+            double cx = engine.centerX(enemies.gx(i)), cy = engine.centerY(enemies.gy(i));
+            drawCentered(g2, enemyImg, cx, cy);
+            drawHpBar(g2, cx, cy - 20, 30, 6, enemies.hp(i), enemies.maxHp(i));
         }
 
         // teammates
         for (GridPos t : engine.teammates)
-            drawCentered(g2, mateImg, engine.centerX(t.x), engine.centerY(t.y));
+            if (inView(t.x, t.y)) drawCentered(g2, mateImg, engine.centerX(t.x), engine.centerY(t.y));
 
         // player
         drawCentered(g2, playerImg, engine.centerX(engine.px), engine.centerY(engine.py));
+        g2.translate(camX, camY);
 
-        if (!engine.alive) drawGameOverOverlay(g2);
+        // HUD 層：數值有變才重新排版
+        g2.drawImage(hudLayer(), 0, 0, null);
 
-        g2.dispose();
+        if (!engine.alive) {
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            drawGameOverOverlay(g2);
+        } else if (engine.awaitingCard()) {
+            g2.drawImage(cardLayer(), 0, 0, null);
+        }
+
+        if (showStats) g2.drawImage(statsLayer(), viewW - STATS_W - 8, HUD_H + 4, null);
+    }
+
+    /** 格子在畫面裡（含邊緣外一格） */
+    private boolean inView(int gx, int gy) {
+        return gx >= camCol - 1 && gx <= camCol + arena.viewCols && gy >= camRow - 1 && gy <= camRow + arena.viewRows;
+    }
+
+    private void drawCentered(Graphics2D g2, SpriteStore.Sprite img, double cx, double cy) {
+        sprites.drawCentered(g2, img, cx, cy);
+    }
+
+    private void drawBackground(Graphics2D g2) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc == null) {
+            // 還沒顯示在螢幕上，直接畫
+            g2.setColor(COLOR_BG);
+            g2.fillRect(0, 0, viewW, viewH);
+            drawGrid(g2, arena.viewCols, arena.viewRows);
+            drawWalls(g2, camCol, camRow, arena.viewCols, arena.viewRows);
+            return;
+        }
+
+        do {
+            if (background == null || background.validate(gc) == VolatileImage.IMAGE_INCOMPATIBLE) {
+                if (background != null) background.flush();
+                background = gc.createCompatibleVolatileImage(bgCols * cell, bgRows * cell);
+                renderBackground();
+            } else if (background.contentsLost() || backgroundWalls != engine.wallVersion()
+                    || camCol < bgCol || camRow < bgRow
+                    || camCol + arena.viewCols > bgCol + bgCols || camRow + arena.viewRows > bgRow + bgRows) {
+                renderBackground();
+            }
+            g2.drawImage(background, (bgCol - camCol) * cell, (bgRow - camRow) * cell, null);
+        } while (background.contentsLost());
     }
 
-    private void drawCentered(Graphics2D g2, Image img, double cx, double cy) {
-        if (img == null) return;
-        int w = img.getWidth(null);
-        int h = img.getHeight(null);
-        if (w <= 0 || h <= 0) return;
-        g2.drawImage(img, (int)(cx - w / 2.0), (int)(cy - h / 2.0), null);
+    /** 以目前鏡頭為中心重畫背景（貼到地圖邊就靠邊） */
+    private void renderBackground() {
+        bgCol = Math.max(0, Math.min(arena.cols - bgCols, camCol - BG_MARGIN));
+        bgRow = Math.max(0, Math.min(arena.rows - bgRows, camRow - BG_MARGIN));
+        Graphics2D g = background.createGraphics();
+        g.setColor(COLOR_BG);
+        g.fillRect(0, 0, bgCols * cell, bgRows * cell);
+        drawGrid(g, bgCols, bgRows);
+        drawWalls(g, bgCol, bgRow, bgCols, bgRows);
+        g.dispose();
+        backgroundWalls = engine.wallVersion();
     }
 
+    private void drawGrid(Graphics2D g2, int cols, int rows) {
+        g2.setColor(COLOR_GRID);
+        for (int c = 0; c <= cols; c++) {
+            int x = c * cell;
+            g2.drawLine(x, 0, x, rows * cell);
+        }
+        for (int r = 0; r <= rows; r++) {
+            int y = r * cell;
+            g2.drawLine(0, y, cols * cell, y);
+        }
+    }
 
+    /** (col0, row0) 開始 cols × rows 格裡的牆，畫在從 (0, 0) 開始的位置 */
+    private void drawWalls(Graphics2D g2, int col0, int row0, int cols, int rows) {
+        g2.setColor(COLOR_WALL);
+        for (int r = 0; r < rows; r++)
+            for (int c = 0; c < cols; c++)
+                if (engine.isWall(col0 + c, row0 + r)) g2.fillRect(c * cell + 1, r * cell + 1, cell - 1, cell - 1);
+    }
 
-    private void drawGrid(Graphics2D g2) {
-        g2.setColor(new Color(255, 255, 255, 18));
-        for (int c = 0; c <= COLS; c++) {
-            int x = c * CELL;
-            g2.drawLine(x, 0, x, H);
+    private BufferedImage hudLayer() {
+        GameState gs = engine.gs;
+        int sec = (int) Math.floor(engine.survivedSec);
+        int team = engine.teammates.size();
+        if (hud != null && hudLevel == gs.level && hudExp == gs.exp && hudExpToNext == gs.expToNext
+                && hudTeam == team && hudSec == sec && hudKills == gs.kills && hudScore == gs.score) {
+            return hud;
         }
-        for (int r = 0; r <= ROWS; r++) {
-            int y = r * CELL;
-            g2.drawLine(0, y, W, y);
+        hudLevel = gs.level; hudExp = gs.exp; hudExpToNext = gs.expToNext;
+        hudTeam = team; hudSec = sec; hudKills = gs.kills; hudScore = gs.score;
+
+        if (hud == null) hud = new BufferedImage(viewW, HUD_H, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = hud.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, viewW, HUD_H);
+        g.setComposite(AlphaComposite.SrcOver);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.setFont(FONT_HUD);
+        String text = String.format(
+                "snakeGame | Lv:%d EXP:%d/%d Team:%d Diff:%d Time:%s | K:%d Score:%d",
+                gs.level, gs.exp, gs.expToNext, team, engine.getDifficulty(),
+                formatTime(sec), gs.kills, gs.score
+        );
+        g.drawString(text, 12, 22);
+        g.dispose();
+        return hud;
+    }
+
+    /** F3 效能面板：每個量測時間窗（0.5 秒）才重畫一次 */
+    private BufferedImage statsLayer() {
+        int v = profiler.version();
+        if (statsLayer != null && statsVersion == v) return statsLayer;
+        statsVersion = v;
+
+        int lineH = 15;
+        int h = (TickProfiler.PHASES + 4) * lineH + 10;
+        if (statsLayer == null) statsLayer = new BufferedImage(STATS_W, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = statsLayer.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.setColor(COLOR_STATS_BG);
+        g.fillRect(0, 0, STATS_W, h);
+        g.setComposite(AlphaComposite.SrcOver);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(FONT_STATS);
+        g.setColor(Color.WHITE);
+
+        int y = lineH;
+        g.drawString(String.format("%-8s %6s %9s %9s %9s", "(ms)", "n", "p50", "p99", "max"), 8, y);
+        for (int i = TickProfiler.PHASES - 1; i >= 0; i--) {  // frame / paint / tick 放最上面
+            y += lineH;
+            g.drawString(String.format("%-8s %6d %9.3f %9.3f %9.3f", TickProfiler.NAMES[i], profiler.count(i),
+                    profiler.p50(i) / 1e6, profiler.p99(i) / 1e6, profiler.max(i) / 1e6), 8, y);
         }
+        y += lineH;
+        g.drawString(String.format("gc: %d (%d ms) in %.1fs", profiler.gcCount(), profiler.gcMillis(),
+                profiler.windowNs() / 1e9), 8, y);
+        y += lineH;
+        g.drawString(String.format("enemies %d  bullets %d  orbs %d  team %d", engine.enemies().size(),
+                engine.bullets().size(), engine.expOrbs().size(), engine.teammates.size()), 8, y);
+        g.dispose();
+        return statsLayer;
+    }
+
+    /** 選卡畫面：選項換了才重畫 */
+    private BufferedImage cardLayer() {
+        if (cardLayer != null && cardVersion == engine.cardOfferVersion) return cardLayer;
+        cardVersion = engine.cardOfferVersion;
+
+        if (cardLayer == null) cardLayer = new BufferedImage(viewW, viewH, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = cardLayer.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.setColor(COLOR_SHADE);
+        g.fillRect(0, 0, viewW, viewH);
+        g.setComposite(AlphaComposite.SrcOver);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        // Title
+        g.setFont(FONT_RUN);
+        g.setColor(Color.WHITE);
+        int queued = engine.queuedCardPicks();
+        String title = "Level " + engine.gs.level + " - pick a card (1 / 2 / 3)"
+                + (queued > 0 ? "   +" + queued + " more" : "");
+        g.drawString(title, (viewW - g.getFontMetrics().stringWidth(title)) / 2, viewH / 2 - 110);
+
+        // Cards
+        List<Card> options = engine.cardOptions();
+        int cw = 240, ch = 150, gap = 24;
+        int total = options.size() * cw + (options.size() - 1) * gap;
+        int x = (viewW - total) / 2, y = viewH / 2 - 80;
+        for (int i = 0; i < options.size(); i++) {
+            Card c = options.get(i);
+            g.setColor(COLOR_CARD_BG);
+            g.fillRoundRect(x, y, cw, ch, 14, 14);
+            g.setColor(COLOR_CARD_BORDER);
+            g.drawRoundRect(x, y, cw, ch, 14, 14);
+
+            g.setFont(FONT_TITLE_SMALL);
+            g.setColor(COLOR_TITLE);
+            g.drawString(String.valueOf(i + 1), x + 14, y + 36);
+            g.setFont(FONT_RUN);
+            g.setColor(Color.WHITE);
+            g.drawString(c.name(), x + 44, y + 34);
+            g.setFont(FONT_LINE);
+            g.setColor(COLOR_TEXT_DIM);
+            g.drawString(c.desc(), x + 14, y + 80);
+            x += cw + gap;
+        }
+        g.dispose();
+        return cardLayer;
     }
 
     private void drawHpBar(Graphics2D g2, double x, double y, int w, int h, int hp, int maxHp) {
         int ix = (int) Math.round(x - w / 2.0);
         int iy = (int) Math.round(y - h / 2.0);
 
-        g2.setColor(new Color(0, 0, 0, 140));
+        g2.setColor(COLOR_HP_BG);
         g2.fillRect(ix, iy, w, h);
 
         double ratio = Math.max(0, Math.min(1.0, hp / (double) maxHp));
         int fw = (int) Math.round((w - 2) * ratio);
 
-        g2.setColor(new Color(0x45, 0xE0, 0x4B));
+        g2.setColor(COLOR_HP_FILL);
         g2.fillRect(ix + 1, iy + 1, fw, h - 2);
 
-        g2.setColor(new Color(255, 255, 255, 90));
+        g2.setColor(COLOR_HP_BORDER);
         g2.drawRect(ix, iy, w, h);
     }
 
     private void drawGameOverOverlay(Graphics2D g2) {
-        g2.setColor(new Color(0, 0, 0, 170));
+        g2.setColor(COLOR_SHADE);
         g2.fillRect(0, 0, getWidth(), getHeight());
 
         // Title
-        g2.setFont(g2.getFont().deriveFont(Font.BOLD, 52f));
-        g2.setColor(new Color(0xFF5A5A));
+        g2.setFont(FONT_TITLE);
+        g2.setColor(COLOR_TITLE);
         String over = "GAME OVER";
         FontMetrics fm = g2.getFontMetrics();
         g2.drawString(over, (getWidth() - fm.stringWidth(over)) / 2, 140);
 
         // Current run
-        g2.setFont(g2.getFont().deriveFont(Font.BOLD, 20f));
+        g2.setFont(FONT_RUN);
         g2.setColor(Color.WHITE);
         String cur = String.format("This Run | Level:%d  Time:%s  K:%d  Score:%d",
                 engine.gs.level, formatTime(engine.survivedSec), engine.gs.kills, engine.gs.score);
         g2.drawString(cur, (getWidth() - g2.getFontMetrics().stringWidth(cur)) / 2, 180);
 
+        // 這個難度的統計（查到才顯示）
+        RunStats st = engine.runStats;
+        if (st != null && st.count > 0) {
+            int rank = st.rankOf(engine.gs.score);
+            String line = String.format("Diff %d | Runs:%d  Best:%d  p50:%d  p90:%d  p99:%d  Rank:%s%s",
+                    st.difficulty, st.count, st.best, st.p50, st.p90, st.p99,
+                    rank > 0 ? "#" + rank : "-", st.isPersonalBest(engine.gs.score) ? "  NEW BEST!" : "");
+            g2.setFont(FONT_LINE);
+            g2.setColor(COLOR_TEXT_DIM);
+            g2.drawString(line, (getWidth() - g2.getFontMetrics().stringWidth(line)) / 2, 205);
+        }
+
+        // 個人最佳（每個難度的最高分）
+        List<RunRecord> bests = engine.personalBests;
+        if (!bests.isEmpty()) {
+            StringBuilder sb = new StringBuilder("Personal bests |");
+            for (RunRecord r : bests) sb.append("  D").append(r.difficulty).append(':').append(r.score);
+            String line = sb.toString();
+            g2.setFont(FONT_LINE);
+            g2.setColor(COLOR_TEXT_DIM);
+            g2.drawString(line, (getWidth() - g2.getFontMetrics().stringWidth(line)) / 2, 227);
+        }
+
         // History header
-        g2.setFont(g2.getFont().deriveFont(Font.PLAIN, 18f));
-        g2.setColor(new Color(255, 255, 255, 220));
-        g2.drawString("History (latest):", 90, 230);
+        g2.setFont(FONT_HEADER);
+        g2.setColor(COLOR_TEXT_DIM);
+        g2.drawString("History (latest):", 90, 255);
 
         // History lines
-        int y = 260;
-        g2.setFont(g2.getFont().deriveFont(Font.PLAIN, 16f));
+        int y = 282;
+        g2.setFont(FONT_LINE);
 
         if (engine.recentHistory == null || engine.recentHistory.isEmpty()) {
             g2.drawString("- (no records yet)", 110, y);
@@ -217,7 +626,7 @@ public class GamePanel extends JPanel {
         }
 
         // Hint
-        g2.setFont(g2.getFont().deriveFont(Font.PLAIN, 18f));
+        g2.setFont(FONT_HEADER);
         g2.setColor(Color.WHITE);
         String hint = "Press R or ESC to restart";
         g2.drawString(hint, (getWidth() - g2.getFontMetrics().stringWidth(hint)) / 2, getHeight() - 60);
@@ -243,18 +652,115 @@ public class GamePanel extends JPanel {
 
         bind(im, am, "R_P", KeyStroke.getKeyStroke("pressed R"), this::restartWithDifficultySelect);
         bind(im, am, "ESC_P", KeyStroke.getKeyStroke("pressed ESCAPE"), this::restartWithDifficultySelect);
+
+        // 選卡：1 / 2 / 3
+        for (int i = 0; i < 3; i++) {
+            final int idx = i;
+            bind(im, am, "CARD_" + (i + 1), KeyStroke.getKeyStroke("pressed " + (i + 1)), () -> {
+                if (!engine.alive || !engine.awaitingCard()) return;
+                if (client != null) pendingPick = idx;
+                else engine.pickCard(idx);
+            });
+        }
+
+        bind(im, am, "F3_P", KeyStroke.getKeyStroke("pressed F3"), () -> {
+            showStats = !showStats;
+            if (!engine.alive) renderFrame();
+        });
     }
 
+    /**
+     * 還活著就先存 checkpoint，選單上可以選擇接著玩。
+     * 同一個視窗、引擎、sprite 與圖層原地開始下一場（GameEngine.reset / restoreSnapshot），不重建。
+     */
     private void restartWithDifficultySelect() {
-        up = down = left = right = false;
+        clearInputFlags();
         if (timer != null) timer.stop();
-        engine.close();
+        if (engine.alive) saveReplay();
+
+        if (client != null) {
+            // 連線模式：重新連線（伺服器可能已經換了），整個視窗重建
+            client.close();
+            profiler.close();
+            GameFrame next = GameFrame.create();
+            SwingUtilities.invokeLater(() -> {
+                owner.dispose();
+                next.setVisible(true);
+            });
+            return;
+        }
 
-        int newDiff = DifficultyDialog.askDifficulty();
-        SwingUtilities.invokeLater(() -> {
-            owner.dispose();
-            new GameFrame(newDiff).setVisible(true);
-        });
+        if (checkpoint != null && engine.alive) checkpoint.save(engine);
+        Checkpoint.Saved saved = checkpoint != null ? checkpoint.latest() : null;
+        boolean resumed = saved != null
+                && DifficultyDialog.askResume(saved.difficulty, saved.level, saved.survivedSec)
+                && resume(saved);
+        if (!resumed) {
+            engine.reset(DifficultyDialog.askDifficulty(), System.nanoTime());
+            engine.setRecorder(newRecorder(engine));
+        }
+        resetView();
+    }
+
+    /** 接著玩 checkpoint 裡的那場（replay 要從第一個 tick 開始錄，所以不錄）；讀不了回傳 false */
+    private boolean resume(Checkpoint.Saved saved) {
+        try {
+            engine.restoreSnapshot(saved.data);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /** 新的一場：畫面這邊的狀態歸零，圖層與 sprite 留著（內容由版本號判斷要不要重畫） */
+    private void resetView() {
+        accumulator = 0;
+        alpha = 0;
+        renderedDead = false;
+        lastNs = System.nanoTime();
+        lastCheckpointNs = lastNs;
+        startedNs = lastNs;
+        firstFrameLogged = !Boolean.getBoolean("snake.startupLog");
+        if (timer != null) timer.start();
+        requestFocusInWindow();
+    }
+
+    private static Checkpoint openCheckpoint() {
+        try {
+            return new Checkpoint(Checkpoint.defaultFile());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /** 沒開 -Dsnake.replays 就不錄（null） */
+    private static ReplayRecorder newRecorder(GameEngine engine) {
+        return KEEP_REPLAYS > 0 ? new ReplayRecorder(engine.arena, engine.seed, engine.getDifficulty()) : null;
+    }
+
+    /** 存到 ~/.snakegame/replays，可用 ReplayPlayer 重播；只留最近 KEEP_REPLAYS 個 */
+    private void saveReplay() {
+        ReplayRecorder rec = engine.getRecorder();
+        if (rec == null || rec.ticks() == 0) return;
+        Path dir = Paths.get(System.getProperty("user.home"), ".snakegame", "replays");
+        try {
+            rec.save(dir.resolve("replay-" + System.currentTimeMillis() + ".snrp"));
+            pruneReplays(dir);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** 檔名裡是存檔時間（毫秒，位數一樣），照名字排就是新舊順序；多的從最舊的開始刪 */
+    private static void pruneReplays(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "replay-*.snrp")) {
+            for (Path f : ds) files.add(f);
+        }
+        Collections.sort(files);
+        for (int i = 0; i < files.size() - KEEP_REPLAYS; i++) Files.deleteIfExists(files.get(i));
     }
 
     private void bind(InputMap im, ActionMap am, String name, KeyStroke ks, Runnable r) {
@@ -0,0 +1,40 @@
+package game;
+
+import java.util.Random;
+
+/**
+ * 固定 seed 的亂數（SplitMix64）。同樣的 seed 在任何 JDK 都產生同樣的序列，
+ * 狀態就是一個 long，可以直接存取。
+ */
+public class GameRng extends Random {
+
+    private static final long serialVersionUID = 1L;
+
+    private long state;
+
+    public GameRng(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        // super() 建構時也會呼叫這裡
+        this.state = seed;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        long z = (state += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public long getState() { return state; }
+    public void setState(long state) { this.state = state; }
+}
@@ -0,0 +1,355 @@
+package game;
+
+import cards.AutoCardChooser;
+import cards.CardChooser;
+import data.NoopRunRepository;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 權威伺服器：一條執行緒用 NIO selector 收連線與輸入，固定 120 Hz 跑 GameEngine，
+ * 每 sendEvery 個 tick 擷取一份 NetState，依每個 client 最後 ack 的那份做 delta 送出去。
+ *
+ * 第一個連進來的 client 是玩家（方向鍵、選卡），其他的是觀戰；沒有玩家時遊戲等著（--bot 除外）。
+ * 玩家斷線後不會把控制權交給觀戰的人（它們的歡迎封包說自己不是玩家），等下一個連進來的 client 當玩家。
+ * ack 一樣的 client 共用同一份編好的封包；封包放在重複使用的 direct buffer 裡。
+ * client 收得太慢（上一包還沒寫完）就跳過這次，之後從它最後 ack 的那份補 delta。
+ *
+ * 用法：java -cp target/classes game.GameServer [--port 7777] [--difficulty 5] [--seed S]
+ *       [--send-hz 60] [--bot chase]
+ * 預設只聽 127.0.0.1，-Dsnake.bind=0.0.0.0 開放給其他機器。
+ * client：java -Dsnake.connect=localhost:7777 -jar ...
+ */
+public final class GameServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 7777;
+    static final int HISTORY = 64;               // 伺服器與 client 都留最近幾份，ack 太舊就送完整的
+    private static final long TICK_NS = Math.round(GameEngine.SIM_DT * 1e9);
+    private static final int RESTART_TICKS = 3 * 120;  // game over 後幾個 tick 開新的一場
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Arena arena;
+    private final int difficulty;
+    private final int sendEvery;
+    private final InputPolicy bot;
+    private long seed;
+    private GameEngine engine;
+    private int deadTicks = 0;
+
+    private final NetState[] history = new NetState[HISTORY];
+    private long seq = 0;
+    private final NetCodec codec = new NetCodec();
+    private final List<Conn> conns = new ArrayList<>();
+    private Conn pilot;  // null = 沒有玩家（--bot 時一直是 null）
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+    private final Packet[] sendCache = new Packet[8];  // 這次送出時依 baseSeq 編好的封包
+    private int sendCacheSize = 0;
+    private volatile boolean running = true;
+
+    // 統計（伺服器執行緒寫，讀的人自己取時間點）
+    public volatile long ticks, snapshots, packetsSent, fullPackets, encodes, bytesSent, skipped;
+
+    /** 一包編好的 snapshot；所有要送它的 client 都寫完才還回 pool */
+    private static final class Packet {
+        ByteBuffer buf;
+        long baseSeq;
+        int refs;
+    }
+
+    private static final class Conn {
+        final SocketChannel ch;
+        final ByteBuffer in = ByteBuffer.allocate(1024);
+        long ack = 0;
+        int flags = 0, card = -1;
+        Packet pending;      // 還沒寫完的封包
+        int pendingPos;
+
+        Conn(SocketChannel ch) { this.ch = ch; }
+    }
+
+    public GameServer(int port, Arena arena, int difficulty, long seed, int sendHz, InputPolicy bot) throws IOException {
+        this.arena = arena;
+        this.difficulty = difficulty;
+        this.seed = seed;
+        this.sendEvery = Math.max(1, (int) Math.round(1.0 / (GameEngine.SIM_DT * sendHz)));
+        this.bot = bot;
+        for (int i = 0; i < HISTORY; i++) history[i] = new NetState();
+        newEngine();
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(System.getProperty("snake.bind", "127.0.0.1"), port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int port() { return server.socket().getLocalPort(); }
+
+    public int clients() { return conns.size(); }
+
+    /** 跑到 stop() 為止（在呼叫的執行緒上） */
+    public void run() throws IOException {
+        long next = System.nanoTime();
+        while (running) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) selector.select(Math.max(1, wait / 1_000_000));  // 不空轉，晚一點點沒關係
+            else selector.selectNow();
+
+            for (SelectionKey key : selector.selectedKeys()) {
+                if (!key.isValid()) continue;
+                if (key.isAcceptable()) accept();
+                else {
+                    Conn c = (Conn) key.attachment();
+                    if (key.isReadable()) read(c);
+                    if (key.isValid() && key.isWritable()) flush(c);
+                }
+            }
+            selector.selectedKeys().clear();
+
+            long now = System.nanoTime();
+            if (now - next > 8 * TICK_NS) next = now;  // 落後太多就不追
+            while (now >= next) {
+                tickOnce();
+                next += TICK_NS;
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void close() {
+        for (Conn c : new ArrayList<>(conns)) drop(c);
+        try {
+            server.close();
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        engine.close();
+    }
+
+    // ===== simulation =====
+
+    /** 用伺服器的地圖與 seed 開新的一場；有 bot 就自動選卡，不然等玩家選。伺服器不存紀錄 */
+    private void newEngine() {
+        if (engine != null) engine.close();
+        CardChooser chooser = bot != null ? new AutoCardChooser(new GameRng(seed)) : null;
+        engine = new GameEngine(arena, difficulty, chooser, new NoopRunRepository(), seed);
+        seed++;
+        deadTicks = 0;
+    }
+
+    private void tickOnce() {
+        if (!engine.alive) {
+            if (++deadTicks >= RESTART_TICKS) newEngine();
+        } else if (bot != null) {
+            int f = bot.decide(engine);
+            engine.tick(GameEngine.SIM_DT, InputPolicy.up(f), InputPolicy.down(f), InputPolicy.left(f), InputPolicy.right(f));
+        } else if (pilot != null) {
+            if (pilot.card >= 0 && engine.awaitingCard()) engine.pickCard(pilot.card);
+            pilot.card = -1;
+            int f = pilot.flags;
+            engine.tick(GameEngine.SIM_DT, InputPolicy.up(f), InputPolicy.down(f), InputPolicy.left(f), InputPolicy.right(f));
+        }
+        ticks++;
+        if (ticks % sendEvery == 0 && !conns.isEmpty()) broadcast();
+    }
+
+    // ===== send =====
+
+    private void broadcast() {
+        NetState cur = history[(int) (++seq % HISTORY)];
+        cur.capture(engine, seq);
+        snapshots++;
+
+        for (int k = conns.size() - 1; k >= 0; k--) {  // 寫失敗會移除連線，倒著走
+            Conn c = conns.get(k);
+            if (c.pending != null) {
+                skipped++;
+                continue;
+            }
+            NetState base = c.ack > 0 && seq - c.ack < HISTORY ? history[(int) (c.ack % HISTORY)] : null;
+            if (base != null && base.seq != c.ack) base = null;
+            Packet p = packetFor(base, cur);
+            p.refs++;
+            c.pending = p;
+            c.pendingPos = 0;
+            if (base == null) fullPackets++;
+            packetsSent++;
+            flush(c);
+        }
+        for (int i = 0; i < sendCacheSize; i++) {
+            release(sendCache[i]);
+            sendCache[i] = null;
+        }
+        sendCacheSize = 0;
+    }
+
+    /** ack 一樣的 client 共用同一包；快取滿了就另外編 */
+    private Packet packetFor(NetState base, NetState cur) {
+        long baseSeq = base != null ? base.seq : 0;
+        for (int i = 0; i < sendCacheSize; i++) if (sendCache[i].baseSeq == baseSeq) return sendCache[i];
+
+        Packet p = new Packet();
+        p.baseSeq = baseSeq;
+        p.buf = pool.isEmpty() ? ByteBuffer.allocateDirect(64 * 1024) : pool.poll();
+        while (true) {
+            ByteBuffer b = p.buf;
+            b.clear();
+            b.position(4);
+            try {
+                codec.encode(base, cur, b);
+                break;
+            } catch (BufferOverflowException e) {
+                p.buf = ByteBuffer.allocateDirect(b.capacity() * 2);
+            }
+        }
+        p.buf.putInt(0, p.buf.position() - 4);
+        p.buf.flip();
+        encodes++;
+
+        if (sendCacheSize < sendCache.length) {
+            p.refs++;
+            sendCache[sendCacheSize++] = p;
+        }
+        return p;
+    }
+
+    private void release(Packet p) {
+        if (--p.refs == 0) pool.push(p.buf);
+    }
+
+    private void flush(Conn c) {
+        Packet p = c.pending;
+        if (p == null) return;
+        ByteBuffer b = p.buf;  // 共用的 buffer，每次寫之前設好這個 client 的位置
+        b.limit(4 + b.getInt(0));
+        b.position(c.pendingPos);
+        try {
+            int n = c.ch.write(b);
+            bytesSent += n;
+        } catch (IOException e) {
+            drop(c);
+            return;
+        }
+        c.pendingPos = b.position();
+        SelectionKey key = c.ch.keyFor(selector);
+        if (!b.hasRemaining()) {
+            c.pending = null;
+            release(p);
+            if (key != null && key.isValid()) key.interestOps(SelectionKey.OP_READ);
+        } else if (key != null && key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    // ===== receive =====
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = server.accept()) != null) {
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            Conn c = new Conn(ch);
+            if (pilot == null && bot == null) pilot = c;
+
+            // 歡迎封包：地圖大小與難度（client 用來建傀儡引擎），連線數很少，直接寫
+            ByteBuffer w = ByteBuffer.allocate(64);
+            w.position(4);
+            w.put(NetCodec.WELCOME);
+            NetCodec.putVar(w, arena.cols); NetCodec.putVar(w, arena.rows); NetCodec.putVar(w, arena.cell);
+            NetCodec.putVar(w, arena.viewCols); NetCodec.putVar(w, arena.viewRows); NetCodec.putVar(w, arena.margin);
+            NetCodec.putVar(w, difficulty);
+            w.put((byte) (c == pilot ? 1 : 0));
+            w.putInt(0, w.position() - 4);
+            w.flip();
+            while (w.hasRemaining()) ch.write(w);
+
+            ch.register(selector, SelectionKey.OP_READ, c);
+            conns.add(c);
+        }
+    }
+
+    /** INPUT：[u16 長度][INPUT, ack, 方向鍵, 選卡]，一個 client 每幀一包 */
+    private void read(Conn c) {
+        int n;
+        try {
+            n = c.ch.read(c.in);
+        } catch (IOException e) {
+            n = -1;
+        }
+        if (n < 0) {
+            drop(c);
+            return;
+        }
+        ByteBuffer in = c.in;
+        in.flip();
+        while (in.remaining() >= 2) {
+            int len = in.getShort(in.position()) & 0xFFFF;
+            if (in.remaining() < 2 + len) break;
+            int end = in.position() + 2 + len;
+            in.position(in.position() + 2);
+            if (in.get() == NetCodec.INPUT) {
+                long ack = NetCodec.getVarLong(in);
+                if (ack > c.ack) c.ack = ack;
+                c.flags = in.get();
+                int card = in.get();
+                if (card >= 0) c.card = card;
+            }
+            in.position(end);
+        }
+        in.compact();
+    }
+
+    private void drop(Conn c) {
+        conns.remove(c);
+        if (c == pilot) pilot = null;
+        if (c.pending != null) {
+            release(c.pending);
+            c.pending = null;
+        }
+        try {
+            c.ch.close();
+        } catch (IOException ignored) {}
+    }
+
+    // ===== main =====
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int difficulty = 5;
+        long seed = System.nanoTime();
+        int sendHz = 60;
+        InputPolicy bot = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(v); break;
+                case "--difficulty": difficulty = Integer.parseInt(v); break;
+                case "--seed": seed = Long.parseLong(v); break;
+                case "--send-hz": sendHz = Integer.parseInt(v); break;
+                case "--bot": bot = v.equals("chase") ? new ChaseBot() : null; break;
+                default: System.err.println("[GameServer] unknown option: " + args[i]);
+            }
+        }
+        try (GameServer s = new GameServer(port, Arena.fromSystemProperties(), difficulty, seed, sendHz, bot)) {
+            System.out.println("[GameServer] listening on " + s.port());
+            s.run();
+        }
+    }
+}
@@ -1,26 +1,58 @@
 package game;
 
+import java.nio.ByteBuffer;
+
 public class GameState {
-    public final int difficulty;
+    public int difficulty;
 
     // Tunables (cards will modify)
-    public double moveInterval = 0.10;
-    public double fireInterval = 0.18;
-    public double enemyStepInterval = 0.25;
+    public double moveInterval;
+    public double fireInterval;
+    public double enemyStepInterval;
 
-    public double bulletSpeed = 520;
-    public int bulletDamage = 1;
+    public double bulletSpeed;
+    public int bulletDamage;
+    public double bulletRetargetInterval;  // 子彈鎖定目標後多久重新找一次最近的敵人
 
     // Progress
-    public int level = 1;
-    public int exp = 0;
-    public int expToNext = 6;
+    public int level;
+    public int exp;
+    public int expToNext;
 
-    public int kills = 0;
-    public int score = 0;
+    public int kills;
+    public int score;
 
     public GameState(int difficulty) {
+        reset(difficulty);
+    }
+
+    /** 回到一場開始時的數值（GameEngine.reset 重複使用同一個物件） */
+    public void reset(int difficulty) {
         this.difficulty = clampInt(difficulty, 1, 10);
+        moveInterval = 0.10;
+        fireInterval = 0.18;
+        enemyStepInterval = 0.25;
+        bulletSpeed = 520;
+        bulletDamage = 1;
+        bulletRetargetInterval = 0.25;
+        level = 1;
+        exp = 0;
+        expToNext = 6;
+        kills = 0;
+        score = 0;
+    }
+
+    /** snapshot：卡片改過的數值與進度（difficulty 由建構子決定） */
+    public void write(ByteBuffer b) {
+        b.putDouble(moveInterval).putDouble(fireInterval).putDouble(enemyStepInterval);
+        b.putDouble(bulletSpeed).putInt(bulletDamage).putDouble(bulletRetargetInterval);
+        b.putInt(level).putInt(exp).putInt(expToNext).putInt(kills).putInt(score);
+    }
+
+    public void read(ByteBuffer b) {
+        moveInterval = b.getDouble(); fireInterval = b.getDouble(); enemyStepInterval = b.getDouble();
+        bulletSpeed = b.getDouble(); bulletDamage = b.getInt(); bulletRetargetInterval = b.getDouble();
+        level = b.getInt(); exp = b.getInt(); expToNext = b.getInt(); kills = b.getInt(); score = b.getInt();
     }
 
     private static int clampInt(int v, int lo, int hi) {
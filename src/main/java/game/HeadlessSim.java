@@ -0,0 +1,94 @@
+package game;
+
+import cards.AutoCardChooser;
+import data.NoopRunRepository;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * 不開視窗、不連資料庫，全速跑 N 場模擬並印出 ticks/sec。
+ *
+ * 用法：java -cp target/classes game.HeadlessSim [--runs N] [--difficulty D]
+ *       [--dt SEC] [--max-sec SEC] [--bot chase|script] [--script RRDDLLUU] [--seed S] [--parallel true]
+ *       [--record FILE] [--profile true] [--arena 500x500] [--checkpoint FILE]
+ * 第 r 場用 seed + r，所以同樣的參數每次跑出來都一樣。
+ * --checkpoint：每模擬 Checkpoint.PERIOD_SEC 秒寫一次 checkpoint（配合 --profile 看 ckpt 的耗時）。
+ */
+public class HeadlessSim {
+
+    public static void main(String[] args) throws IOException {
+        int runs = 10;
+        int difficulty = 5;
+        double dt = GameEngine.SIM_DT;
+        long seed = 1;
+        boolean parallel = false;
+        String record = null;
+        String checkpoint = null;
+        boolean profile = false;
+        Arena arena = Arena.DEFAULT;
+        double maxSec = 600;
+        String bot = "chase";
+        String script = "RRRRDDDDLLLLUUUU";
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "--runs": runs = Integer.parseInt(v); break;
+                case "--difficulty": difficulty = Integer.parseInt(v); break;
+                case "--dt": dt = Double.parseDouble(v); break;
+                case "--max-sec": maxSec = Double.parseDouble(v); break;
+                case "--bot": bot = v; break;
+                case "--script": script = v; break;
+                case "--seed": seed = Long.parseLong(v); break;
+                case "--parallel": parallel = Boolean.parseBoolean(v); break;
+                case "--record": record = v; break;
+                case "--checkpoint": checkpoint = v; break;
+                case "--profile": profile = Boolean.parseBoolean(v); break;
+                case "--arena": arena = Arena.parse(v, Arena.DEFAULT.cell); break;
+                default: System.err.println("[HeadlessSim] unknown option: " + args[i]);
+            }
+        }
+
+        TickProfiler profiler = profile ? new TickProfiler() : null;
+        Checkpoint ckpt = checkpoint != null ? new Checkpoint(Paths.get(checkpoint)) : null;
+        long ckptEvery = Math.max(1, Math.round(Checkpoint.PERIOD_SEC / dt));
+        long totalTicks = 0;
+        long t0 = System.nanoTime();
+
+        for (int r = 0; r < runs; r++) {
+            InputPolicy input = bot.equals("script") ? new ScriptedInput(script, 6) : new ChaseBot();
+            GameEngine engine = new GameEngine(arena, difficulty, new AutoCardChooser(new GameRng(seed + r)), new NoopRunRepository(), seed + r);
+            engine.setParallel(parallel);
+            engine.setProfiler(profiler);
+            if (record != null && r == 0) engine.setRecorder(new ReplayRecorder(arena, seed, difficulty));
+
+            long ticks = 0;
+            while (engine.alive && engine.survivedSec < maxSec) {
+                int f = input.decide(engine);
+                engine.tick(dt, InputPolicy.up(f), InputPolicy.down(f), InputPolicy.left(f), InputPolicy.right(f));
+                ticks++;
+                if (ckpt != null && ticks % ckptEvery == 0) {
+                    long tc = System.nanoTime();
+                    ckpt.save(engine);
+                    if (profiler != null) profiler.lap(TickProfiler.CHECKPOINT, tc);
+                }
+            }
+            totalTicks += ticks;
+            engine.close();
+            if (engine.getRecorder() != null) engine.getRecorder().save(Paths.get(record));
+
+            System.out.printf("run %d: time=%.1fs level=%d kills=%d score=%d ticks=%d%n",
+                    r + 1, engine.survivedSec, engine.gs.level, engine.gs.kills, engine.gs.score, ticks);
+        }
+
+        double sec = (System.nanoTime() - t0) / 1_000_000_000.0;
+        if (ckpt != null) ckpt.close();
+        System.out.printf("%d runs, %d ticks in %.2fs -> %.0f ticks/sec%n", runs, totalTicks, sec, totalTicks / sec);
+        if (profiler != null) {
+            profiler.roll();
+            System.out.println(profiler.summary());
+            profiler.close();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package game;
+
+/** 無畫面模式的輸入來源：每個 tick 回傳方向鍵的 bit 組合 */
+public interface InputPolicy {
+    int UP = 1, DOWN = 2, LEFT = 4, RIGHT = 8;
+
+    int decide(GameEngine engine);
+
+    static boolean up(int flags) { return (flags & UP) != 0; }
+    static boolean down(int flags) { return (flags & DOWN) != 0; }
+    static boolean left(int flags) { return (flags & LEFT) != 0; }
+    static boolean right(int flags) { return (flags & RIGHT) != 0; }
+}
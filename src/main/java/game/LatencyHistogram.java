@@ -0,0 +1,62 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * 固定 bucket 的延遲直方圖（單位 ns），record 不配置記憶體。
+ * 小於 8 各自一格，之後每個 2 的次方再分 8 格，誤差約 12.5%。
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB + (63 - SUB_BITS) * SUB;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long max = 0;
+
+    public void record(long ns) {
+        if (ns < 0) ns = 0;
+        counts[bucket(ns)]++;
+        count++;
+        if (ns > max) max = ns;
+    }
+
+    public long count() { return count; }
+
+    public long max() { return max; }
+
+    /** 第 p 百分位（0~100）落在的 bucket 上界，不會超過 max */
+    public long percentile(double p) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(count * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        max = 0;
+    }
+
+    static int bucket(long v) {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+        return SUB + (exp - SUB_BITS) * SUB + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB) return bucket;
+        int exp = (bucket - SUB) / SUB + SUB_BITS;
+        int sub = (bucket - SUB) % SUB;
+        long lower = (long) (SUB + sub) << (exp - SUB_BITS);
+        return lower + (1L << (exp - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,323 @@
+package game;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * NetState 的 delta 編碼：只送跟 base（client 最後 ack 的那份）不一樣的東西，整數都用 varint。
+ * base 是 null 就是完整的一份（跟空的狀態比）。
+ *
+ * 封包內容（SNAPSHOT）：
+ *   seq, baseSeq（0 = 完整）, hash（8 bytes, 給 client 檢查解出來的對不對）
+ *   px, py, level, exp, expToNext, kills, score, survivedMs, flags（bit0 alive，其餘 = 選項張數）, 選項
+ *   敵人：移除的 handle 數 + handle…；有變的數量 + [handle, mask, 位置?, hp?, maxHp?]…
+ *   子彈：數量 + 每顆跟前一顆的座標差（zigzag）；子彈每個 tick 都在動，全部送
+ *   經驗球：有變的格子數 + [跟前一格的差, 數量（0 = 拿掉）]…
+ *   隊友：總數 + 有變的數量 + [index, x, y]…
+ *
+ * 一個 NetCodec 只給一條執行緒用（比對用的 scratch 陣列重複使用）。
+ */
+final class NetCodec {
+
+    static final byte SNAPSHOT = 1, WELCOME = 2, INPUT = 3;
+
+    private static final int ID_MASK = (1 << 20) - 1;  // EnemyPool 的 id 部分
+    private static final int M_POS = 1, M_HP = 2, M_MAXHP = 4, M_ALL = 7;
+
+    // id → index，stamp 對得上才有效，不用每次清
+    private int[] baseStamp = new int[256], baseIdx = new int[256];
+    private int[] curStamp = new int[256], curIdx = new int[256];
+    private int stamp = 0;
+    private int[] list = new int[256];
+    private long[] orbList = new long[256];
+
+    // ===== encode =====
+
+    void encode(NetState base, NetState cur, ByteBuffer b) {
+        b.put(SNAPSHOT);
+        putVarLong(b, cur.seq);
+        putVarLong(b, base != null ? base.seq : 0);
+        b.putLong(cur.hash);
+
+        putVar(b, cur.px); putVar(b, cur.py);
+        putVar(b, cur.level); putVar(b, cur.exp); putVar(b, cur.expToNext);
+        putVar(b, cur.kills); putVar(b, cur.score); putVar(b, cur.survivedMs);
+        b.put((byte) ((cur.alive ? 1 : 0) | cur.cardCount << 1));
+        for (int k = 0; k < cur.cardCount; k++) b.put((byte) cur.cards[k]);
+
+        encodeEnemies(base, cur, b);
+
+        putVar(b, cur.bulletCount);
+        int lx = 0, ly = 0;
+        for (int i = 0; i < cur.bulletCount; i++) {
+            putVar(b, zig(cur.bx[i] - lx));
+            putVar(b, zig(cur.by[i] - ly));
+            lx = cur.bx[i]; ly = cur.by[i];
+        }
+
+        encodeOrbs(base, cur, b);
+        encodeMates(base, cur, b);
+    }
+
+    private void encodeEnemies(NetState base, NetState cur, ByteBuffer b) {
+        int bn = base != null ? base.enemyCount : 0, cn = cur.enemyCount;
+        stamp++;
+        for (int j = 0; j < bn; j++) {
+            int id = ensureIds(base.eHandle[j] & ID_MASK);
+            baseStamp[id] = stamp;
+            baseIdx[id] = j;
+        }
+        for (int i = 0; i < cn; i++) {
+            int id = ensureIds(cur.eHandle[i] & ID_MASK);
+            curStamp[id] = stamp;
+            curIdx[id] = i;
+        }
+
+        // base 有、cur 沒有同一個 handle 的：移除
+        int n = 0;
+        if (list.length < bn) list = new int[Math.max(bn, list.length * 2)];
+        for (int j = 0; j < bn; j++) {
+            int h = base.eHandle[j], id = h & ID_MASK;
+            if (curStamp[id] != stamp || cur.eHandle[curIdx[id]] != h) list[n++] = h;
+        }
+        putVar(b, n);
+        for (int k = 0; k < n; k++) putVar(b, list[k]);
+
+        // 新的或有變的：先算好 mask 再寫
+        n = 0;
+        if (list.length < cn * 2) list = new int[Math.max(cn * 2, list.length * 2)];
+        for (int i = 0; i < cn; i++) {
+            int h = cur.eHandle[i], id = h & ID_MASK;
+            int mask = M_ALL;
+            if (baseStamp[id] == stamp && base.eHandle[baseIdx[id]] == h) {
+                int j = baseIdx[id];
+                mask = 0;
+                if (cur.eGx[i] != base.eGx[j] || cur.eGy[i] != base.eGy[j]) mask |= M_POS;
+                if (cur.eHp[i] != base.eHp[j]) mask |= M_HP;
+                if (cur.eMaxHp[i] != base.eMaxHp[j]) mask |= M_MAXHP;
+                if (mask == 0) continue;
+            }
+            list[n * 2] = i;
+            list[n * 2 + 1] = mask;
+            n++;
+        }
+        putVar(b, n);
+        for (int k = 0; k < n; k++) {
+            int i = list[k * 2], mask = list[k * 2 + 1];
+            putVar(b, cur.eHandle[i]);
+            b.put((byte) mask);
+            if ((mask & M_POS) != 0) { putVar(b, cur.eGx[i]); putVar(b, cur.eGy[i]); }
+            if ((mask & M_HP) != 0) putVar(b, cur.eHp[i]);
+            if ((mask & M_MAXHP) != 0) putVar(b, cur.eMaxHp[i]);
+        }
+    }
+
+    private void encodeOrbs(NetState base, NetState cur, ByteBuffer b) {
+        int bn = base != null ? base.orbCount : 0, cn = cur.orbCount;
+        if (orbList.length < bn + cn) orbList = new long[Math.max(bn + cn, orbList.length * 2)];
+
+        // 兩邊都依格子排好了，merge 一次
+        int n = 0, i = 0, j = 0;
+        while (i < bn || j < cn) {
+            int bc = i < bn ? NetState.orbCell(base.orbs[i]) : Integer.MAX_VALUE;
+            int cc = j < cn ? NetState.orbCell(cur.orbs[j]) : Integer.MAX_VALUE;
+            if (bc == cc) {
+                if (base.orbs[i] != cur.orbs[j]) orbList[n++] = cur.orbs[j];
+                i++; j++;
+            } else if (bc < cc) {
+                orbList[n++] = NetState.orb(bc, 0);
+                i++;
+            } else {
+                orbList[n++] = cur.orbs[j];
+                j++;
+            }
+        }
+        putVar(b, n);
+        int last = 0;
+        for (int k = 0; k < n; k++) {
+            int c = NetState.orbCell(orbList[k]);
+            putVar(b, c - last);
+            putVar(b, NetState.orbCount(orbList[k]));
+            last = c;
+        }
+    }
+
+    private void encodeMates(NetState base, NetState cur, ByteBuffer b) {
+        int bn = base != null ? base.mateCount : 0, cn = cur.mateCount;
+        putVar(b, cn);
+        int n = 0;
+        for (int k = 0; k < cn; k++) if (k >= bn || cur.mx[k] != base.mx[k] || cur.my[k] != base.my[k]) n++;
+        putVar(b, n);
+        for (int k = 0; k < cn; k++) {
+            if (k < bn && cur.mx[k] == base.mx[k] && cur.my[k] == base.my[k]) continue;
+            putVar(b, k);
+            putVar(b, cur.mx[k]);
+            putVar(b, cur.my[k]);
+        }
+    }
+
+    // ===== decode =====
+
+    /** 讀 SNAPSHOT 在 seq / baseSeq 之後的部分：out = base + delta（base 是 null 就是完整的一份） */
+    void decode(NetState base, NetState out, ByteBuffer b) {
+        out.hash = b.getLong();
+        if (base != null) out.copyFrom(base);
+        else { out.enemyCount = 0; out.mateCount = 0; }
+
+        out.px = getVar(b); out.py = getVar(b);
+        out.level = getVar(b); out.exp = getVar(b); out.expToNext = getVar(b);
+        out.kills = getVar(b); out.score = getVar(b); out.survivedMs = getVar(b);
+        int flags = b.get();
+        out.alive = (flags & 1) != 0;
+        out.cardCount = Math.min(out.cards.length, flags >> 1);
+        for (int k = 0; k < out.cardCount; k++) out.cards[k] = b.get();
+
+        decodeEnemies(out, b);
+
+        int bn = getVar(b);
+        out.ensureBullets(bn);
+        out.bulletCount = bn;
+        int lx = 0, ly = 0;
+        for (int i = 0; i < bn; i++) {
+            lx += unzig(getVar(b));
+            ly += unzig(getVar(b));
+            out.bx[i] = lx; out.by[i] = ly;
+        }
+
+        decodeOrbs(base, out, b);
+        decodeMates(out, b);
+    }
+
+    private void decodeEnemies(NetState s, ByteBuffer b) {
+        // 移除：用 id 標記要拿掉的 handle，再壓緊
+        stamp++;
+        int removed = getVar(b);
+        for (int k = 0; k < removed; k++) {
+            int h = getVar(b), id = ensureIds(h & ID_MASK);
+            baseStamp[id] = stamp;
+            baseIdx[id] = h;
+        }
+        int n = 0;
+        for (int j = 0; j < s.enemyCount; j++) {
+            int h = s.eHandle[j], id = h & ID_MASK;
+            if (removed > 0 && id < baseStamp.length && baseStamp[id] == stamp && baseIdx[id] == h) continue;
+            if (n != j) {
+                s.eHandle[n] = h; s.eGx[n] = s.eGx[j]; s.eGy[n] = s.eGy[j];
+                s.eHp[n] = s.eHp[j]; s.eMaxHp[n] = s.eMaxHp[j];
+            }
+            n++;
+        }
+        s.enemyCount = n;
+
+        stamp++;
+        for (int j = 0; j < n; j++) {
+            int id = ensureIds(s.eHandle[j] & ID_MASK);
+            curStamp[id] = stamp;
+            curIdx[id] = j;
+        }
+        int changed = getVar(b);
+        for (int k = 0; k < changed; k++) {
+            int h = getVar(b), id = ensureIds(h & ID_MASK);
+            int mask = b.get();
+            int j;
+            if (curStamp[id] == stamp && s.eHandle[curIdx[id]] == h) {
+                j = curIdx[id];
+            } else {
+                s.ensureEnemies(s.enemyCount + 1);
+                j = s.enemyCount++;
+                s.eHandle[j] = h;
+                curStamp[id] = stamp;
+                curIdx[id] = j;
+            }
+            if ((mask & M_POS) != 0) { s.eGx[j] = getVar(b); s.eGy[j] = getVar(b); }
+            if ((mask & M_HP) != 0) s.eHp[j] = getVar(b);
+            if ((mask & M_MAXHP) != 0) s.eMaxHp[j] = getVar(b);
+        }
+    }
+
+    private void decodeOrbs(NetState base, NetState s, ByteBuffer b) {
+        int n = getVar(b);
+        if (orbList.length < n) orbList = new long[Math.max(n, orbList.length * 2)];
+        int last = 0;
+        for (int k = 0; k < n; k++) {
+            last += getVar(b);
+            orbList[k] = NetState.orb(last, getVar(b));
+        }
+
+        // base 跟變動都依格子排好了：merge，數量 0 的拿掉
+        int bn = base != null ? base.orbCount : 0;
+        s.ensureOrbs(bn + n);
+        int out = 0, i = 0, j = 0;
+        while (i < bn || j < n) {
+            int bc = i < bn ? NetState.orbCell(base.orbs[i]) : Integer.MAX_VALUE;
+            int cc = j < n ? NetState.orbCell(orbList[j]) : Integer.MAX_VALUE;
+            long o;
+            if (bc == cc) { o = orbList[j++]; i++; }
+            else if (bc < cc) o = base.orbs[i++];
+            else o = orbList[j++];
+            if (NetState.orbCount(o) != 0) s.orbs[out++] = o;
+        }
+        s.orbCount = out;
+    }
+
+    private void decodeMates(NetState s, ByteBuffer b) {
+        int cn = getVar(b);
+        s.ensureMates(cn);
+        s.mateCount = cn;
+        for (int k = getVar(b); k > 0; k--) {
+            int i = getVar(b);
+            s.mx[i] = getVar(b);
+            s.my[i] = getVar(b);
+        }
+    }
+
+    private int ensureIds(int id) {
+        if (id >= baseStamp.length) {
+            int n = Math.max(id + 1, baseStamp.length * 2);
+            baseStamp = Arrays.copyOf(baseStamp, n);
+            baseIdx = Arrays.copyOf(baseIdx, n);
+            curStamp = Arrays.copyOf(curStamp, n);
+            curIdx = Arrays.copyOf(curIdx, n);
+        }
+        return id;
+    }
+
+    // ===== varint =====
+
+    static void putVar(ByteBuffer b, int v) {
+        while ((v & ~0x7F) != 0) {
+            b.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    static int getVar(ByteBuffer b) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int x = b.get();
+            v |= (x & 0x7F) << shift;
+            if (x >= 0) return v;
+        }
+    }
+
+    static void putVarLong(ByteBuffer b, long v) {
+        while ((v & ~0x7FL) != 0) {
+            b.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    static long getVarLong(ByteBuffer b) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int x = b.get();
+            v |= (long) (x & 0x7F) << shift;
+            if (x >= 0) return v;
+        }
+    }
+
+    static int zig(int v) { return (v << 1) ^ (v >> 31); }
+    static int unzig(int v) { return (v >>> 1) ^ -(v & 1); }
+}
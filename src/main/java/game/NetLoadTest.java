@@ -0,0 +1,122 @@
+package game;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 本機壓力測試：同一個 JVM 裡開 GameServer（ChaseBot 在玩），接 N 個 client，
+ * 量伺服器執行緒的 CPU 與送出的位元組，看多一個 client 要多花多少。
+ * client 全部在主執行緒用一個 selector 收，每收到一份就 ack；第一個 client 有傀儡引擎（順便跑 applyNetState）。
+ *
+ * 用法：java -cp target/classes game.NetLoadTest [--clients 0,8,32,64] [--seconds 10]
+ *       [--difficulty 5] [--seed 1] [--send-hz 60] [--arena 60x40]
+ */
+public class NetLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String clientList = "0,8,32,64";
+        double seconds = 10;
+        int difficulty = 5;
+        long seed = 1;
+        int sendHz = 60;
+        Arena arena = Arena.DEFAULT;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "--clients": clientList = v; break;
+                case "--seconds": seconds = Double.parseDouble(v); break;
+                case "--difficulty": difficulty = Integer.parseInt(v); break;
+                case "--seed": seed = Long.parseLong(v); break;
+                case "--send-hz": sendHz = Integer.parseInt(v); break;
+                case "--arena": arena = Arena.parse(v, Arena.DEFAULT.cell); break;
+                default: System.err.println("[NetLoadTest] unknown option: " + args[i]);
+            }
+        }
+
+        System.out.printf("%7s %8s %9s %10s %11s %6s %7s %10s %12s %10s%n",
+                "clients", "snaps", "KB/s", "B/tick", "B/cli/snap", "full%", "skipped",
+                "cpu us/tk", "+us/cli/snap", "mismatch");
+        double baseCpuPerTick = -1;
+        for (String s : clientList.split(",")) {
+            int n = Integer.parseInt(s.trim());
+            double cpuPerTick = scenario(n, seconds, arena, difficulty, seed, sendHz, baseCpuPerTick);
+            if (n == 0) baseCpuPerTick = cpuPerTick;
+        }
+    }
+
+    /** 跑一組，印一行；回傳伺服器每個 tick 的 CPU（µs）。baseCpuPerTick 是 0 個 client 時的值（沒有就是 -1） */
+    private static double scenario(int n, double seconds, Arena arena, int difficulty, long seed, int sendHz,
+                                   double baseCpuPerTick) throws Exception {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        GameServer server = new GameServer(0, arena, difficulty, seed, sendHz, new ChaseBot());
+        Thread t = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "game-server");
+        t.start();
+
+        List<GameClient> clients = new ArrayList<>();
+        Selector selector = Selector.open();
+        for (int i = 0; i < n; i++) {
+            GameClient c = GameClient.connect("127.0.0.1:" + server.port(), i == 0);
+            c.channel().register(selector, SelectionKey.OP_READ, c);
+            clients.add(c);
+        }
+
+        // 暖機一秒再開始量（JIT、client 第一份完整的 snapshot）
+        pump(selector, 1_000_000_000L);
+        long cpu0 = mx.getThreadCpuTime(t.getId());
+        long ticks0 = server.ticks, snaps0 = server.snapshots, bytes0 = server.bytesSent;
+        long packets0 = server.packetsSent, fulls0 = server.fullPackets, skipped0 = server.skipped;
+        long t0 = System.nanoTime();
+
+        pump(selector, (long) (seconds * 1e9));
+
+        double wall = (System.nanoTime() - t0) / 1e9;
+        long cpu = mx.getThreadCpuTime(t.getId()) - cpu0;
+        long ticks = server.ticks - ticks0, snaps = server.snapshots - snaps0, bytes = server.bytesSent - bytes0;
+        long packets = server.packetsSent - packets0, fulls = server.fullPackets - fulls0;
+        long skipped = server.skipped - skipped0;
+
+        server.stop();
+        t.join();
+        server.close();
+        long mismatches = 0;
+        for (GameClient c : clients) {
+            mismatches += c.hashMismatches + c.missingBase;
+            c.close();
+        }
+        selector.close();
+
+        double cpuPerTick = ticks > 0 ? cpu / 1e3 / ticks : 0;
+        // 比 0 個 client 多出來的 CPU，攤到每個 client 收到的每一份
+        String perClient = n > 0 && snaps > 0 && baseCpuPerTick >= 0
+                ? String.format("%.2f", (cpuPerTick - baseCpuPerTick) * ticks / snaps / n) : "-";
+        System.out.printf("%7d %8d %9.1f %10.1f %11.1f %6.1f %7d %10.2f %12s %10d%n",
+                n, snaps, bytes / 1024.0 / wall, ticks > 0 ? (double) bytes / ticks : 0,
+                packets > 0 ? (double) bytes / packets : 0, packets > 0 ? 100.0 * fulls / packets : 0,
+                skipped, cpuPerTick, perClient, mismatches);
+        return cpuPerTick;
+    }
+
+    /** 收 client 的資料 ns 奈秒；每收到新的 snapshot 就送一包輸入（ack） */
+    private static void pump(Selector selector, long ns) throws IOException {
+        long end = System.nanoTime() + ns;
+        while (System.nanoTime() < end) {
+            selector.select(10);
+            for (SelectionKey key : selector.selectedKeys()) {
+                GameClient c = (GameClient) key.attachment();
+                if (c.poll()) c.sendInput(0, -1);
+            }
+            selector.selectedKeys().clear();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package game;
+
+import cards.Card;
+import entities.BulletView;
+import entities.EnemyView;
+import entities.ExpOrbView;
+import entities.GridPos;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 伺服器送給 client 的狀態：GamePanel 畫得出來的部分，每送一次擷取一份。
+ * 敵人用 handle 當 key；子彈座標量化成 1/QUANT 像素；經驗球依格子排序，兩份可以直接 merge 比對。
+ * 陣列只在不夠時加倍，重複使用不配置記憶體。
+ */
+final class NetState {
+
+    static final double QUANT = 4;
+
+    long seq;
+    int px, py, level, exp, expToNext, kills, score, survivedMs;
+    boolean alive;
+    int cardCount;
+    final int[] cards = new int[3];
+
+    int enemyCount;
+    int[] eHandle = new int[64], eGx = new int[64], eGy = new int[64], eHp = new int[64], eMaxHp = new int[64];
+    int bulletCount;
+    int[] bx = new int[64], by = new int[64];
+    int orbCount;
+    long[] orbs = new long[64];  // cell << 32 | count
+    int mateCount;
+    int[] mx = new int[16], my = new int[16];
+
+    long hash;
+
+    static int orbCell(long o) { return (int) (o >>> 32); }
+    static int orbCount(long o) { return (int) o; }
+    static long orb(int cell, int count) { return (long) cell << 32 | count; }
+
+    void capture(GameEngine e, long seq) {
+        this.seq = seq;
+        px = e.px;
+        py = e.py;
+        GameState gs = e.gs;
+        level = gs.level;
+        exp = gs.exp;
+        expToNext = gs.expToNext;
+        kills = gs.kills;
+        score = gs.score;
+        survivedMs = (int) Math.round(e.survivedSec * 1000);
+        alive = e.alive;
+        List<Card> options = e.cardOptions();
+        cardCount = Math.min(cards.length, options.size());
+        for (int k = 0; k < cardCount; k++) cards[k] = e.cardOptionIndex(k);
+
+        EnemyView en = e.enemies();
+        ensureEnemies(en.size());
+        enemyCount = en.size();
+        for (int i = 0; i < enemyCount; i++) {
+            eHandle[i] = e.enemyHandle(i);
+            eGx[i] = en.gx(i); eGy[i] = en.gy(i);
+            eHp[i] = en.hp(i); eMaxHp[i] = en.maxHp(i);
+        }
+
+        BulletView bv = e.bullets();
+        ensureBullets(bv.size());
+        bulletCount = bv.size();
+        for (int i = 0; i < bulletCount; i++) {
+            bx[i] = (int) Math.round(bv.x(i) * QUANT);
+            by[i] = (int) Math.round(bv.y(i) * QUANT);
+        }
+
+        ExpOrbView ov = e.expOrbs();
+        ensureOrbs(ov.size());
+        orbCount = ov.size();
+        for (int i = 0; i < orbCount; i++) orbs[i] = orb(ov.gy(i) * e.arena.cols + ov.gx(i), ov.count(i));
+        Arrays.sort(orbs, 0, orbCount);
+
+        ensureMates(e.teammates.size());
+        mateCount = e.teammates.size();
+        for (int k = 0; k < mateCount; k++) {
+            GridPos t = e.teammates.get(k);
+            mx[k] = t.x; my[k] = t.y;
+        }
+        hash = computeHash();
+    }
+
+    /** 除了 seq / hash 之外的內容複製自 o（解 delta 前先從 base 開始） */
+    void copyFrom(NetState o) {
+        px = o.px; py = o.py; level = o.level; exp = o.exp; expToNext = o.expToNext;
+        kills = o.kills; score = o.score; survivedMs = o.survivedMs; alive = o.alive;
+        cardCount = o.cardCount;
+        System.arraycopy(o.cards, 0, cards, 0, cards.length);
+
+        ensureEnemies(o.enemyCount);
+        enemyCount = o.enemyCount;
+        System.arraycopy(o.eHandle, 0, eHandle, 0, enemyCount);
+        System.arraycopy(o.eGx, 0, eGx, 0, enemyCount);
+        System.arraycopy(o.eGy, 0, eGy, 0, enemyCount);
+        System.arraycopy(o.eHp, 0, eHp, 0, enemyCount);
+        System.arraycopy(o.eMaxHp, 0, eMaxHp, 0, enemyCount);
+
+        ensureMates(o.mateCount);
+        mateCount = o.mateCount;
+        System.arraycopy(o.mx, 0, mx, 0, mateCount);
+        System.arraycopy(o.my, 0, my, 0, mateCount);
+    }
+
+    /** 內容的 hash；敵人的順序兩邊可能不同，用加總讓順序不影響結果 */
+    long computeHash() {
+        long h = 0xCBF29CE484222325L;
+        h = mix(h, px); h = mix(h, py); h = mix(h, level); h = mix(h, exp); h = mix(h, expToNext);
+        h = mix(h, kills); h = mix(h, score); h = mix(h, survivedMs); h = mix(h, alive ? 1 : 0);
+        h = mix(h, cardCount);
+        for (int k = 0; k < cardCount; k++) h = mix(h, cards[k]);
+
+        long sum = 0;
+        for (int i = 0; i < enemyCount; i++) {
+            long eh = mix(mix(mix(mix(mix(0x100000001B3L, eHandle[i]), eGx[i]), eGy[i]), eHp[i]), eMaxHp[i]);
+            sum += eh * 0x9E3779B97F4A7C15L;
+        }
+        h = mix(h, sum);
+        h = mix(h, enemyCount);
+        for (int i = 0; i < bulletCount; i++) { h = mix(h, bx[i]); h = mix(h, by[i]); }
+        for (int i = 0; i < orbCount; i++) h = mix(h, orbs[i]);
+        for (int k = 0; k < mateCount; k++) { h = mix(h, mx[k]); h = mix(h, my[k]); }
+        return h;
+    }
+
+    private static long mix(long h, long v) {
+        return (h ^ v) * 0x100000001B3L;
+    }
+
+    void ensureEnemies(int n) {
+        if (eHandle.length >= n) return;
+        int c = Math.max(n, eHandle.length * 2);
+        eHandle = Arrays.copyOf(eHandle, c);
+        eGx = Arrays.copyOf(eGx, c);
+        eGy = Arrays.copyOf(eGy, c);
+        eHp = Arrays.copyOf(eHp, c);
+        eMaxHp = Arrays.copyOf(eMaxHp, c);
+    }
+
+    void ensureBullets(int n) {
+        if (bx.length >= n) return;
+        int c = Math.max(n, bx.length * 2);
+        bx = Arrays.copyOf(bx, c);
+        by = Arrays.copyOf(by, c);
+    }
+
+    void ensureOrbs(int n) {
+        if (orbs.length < n) orbs = Arrays.copyOf(orbs, Math.max(n, orbs.length * 2));
+    }
+
+    void ensureMates(int n) {
+        if (mx.length >= n) return;
+        int c = Math.max(n, mx.length * 2);
+        mx = Arrays.copyOf(mx, c);
+        my = Arrays.copyOf(my, c);
+    }
+}
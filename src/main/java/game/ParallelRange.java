@@ -0,0 +1,70 @@
+package game;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 把 [0, n) 切成固定幾段交給 fork-join 執行；每段只能寫自己範圍內的資料。
+ * 一個 phase 建一個，task 每次 reinitialize 重複使用，每個 tick 不用再配新的。只給一條執行緒呼叫。
+ */
+public final class ParallelRange {
+
+    public interface Body {
+        void run(int from, int to);
+    }
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final Body body;
+    private final Chunk[] chunks;  // 最多 parallelism × 2 段，每段至少 threshold 個
+    private final Root root = new Root();
+    private int count;
+
+    public ParallelRange(ForkJoinPool pool, int threshold, Body body) {
+        this.pool = pool;
+        this.threshold = Math.max(1, threshold);
+        this.body = body;
+        this.chunks = new Chunk[Math.max(2, pool.getParallelism() * 2)];
+        for (int i = 0; i < chunks.length; i++) chunks[i] = new Chunk();
+    }
+
+    /** n 小於 threshold 就直接在呼叫端跑 */
+    public void run(int n) {
+        if (n <= 0) return;
+        if (n < threshold) {
+            body.run(0, n);
+            return;
+        }
+        count = Math.max(1, Math.min(chunks.length, n / threshold));
+        for (int i = 0; i < count; i++) {
+            Chunk c = chunks[i];
+            c.from = (int) ((long) n * i / count);
+            c.to = (int) ((long) n * (i + 1) / count);
+            c.reinitialize();
+        }
+        root.reinitialize();
+        pool.invoke(root);
+    }
+
+    /** 在 pool 裡把第 1 段之後的 fork 出去，第 0 段自己跑，再等其他的 */
+    private final class Root extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            for (int i = 1; i < count; i++) chunks[i].fork();
+            chunks[0].compute();
+            for (int i = 1; i < count; i++) chunks[i].join();
+        }
+    }
+
+    private final class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        int from, to;
+
+        @Override
+        protected void compute() {
+            body.run(from, to);
+        }
+    }
+}
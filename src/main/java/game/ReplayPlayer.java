@@ -0,0 +1,179 @@
+package game;
+
+import cards.Card;
+import cards.CardChooser;
+import data.NoopRunRepository;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 不開視窗全速重播 ReplayRecorder 錄的檔案，檢查狀態 hash 並印出 ticks/sec。
+ * 也可以當作固定、可重現的效能測試負載。
+ *
+ * 用法：java -cp target/classes game.ReplayPlayer FILE [--repeat N]
+ */
+public class ReplayPlayer implements CardChooser {
+
+    private final DataInputStream in;
+    public final long seed;
+    public final int difficulty;
+    public final Arena arena;
+
+    private final long[] hashTicks;
+    private final long[] hashes;
+
+    private int flags = 0;
+    private long runLeft = 0;
+    private boolean ended = false;  // 錄到一半在選卡畫面就結束
+
+    private ReplayPlayer(DataInputStream in) throws IOException {
+        this.in = in;
+        if (in.readInt() != ReplayRecorder.MAGIC) throw new IOException("not a replay file");
+        if (in.readInt() != ReplayRecorder.VERSION) throw new IOException("unsupported replay version");
+        this.seed = in.readLong();
+        this.difficulty = in.readInt();
+        int hz = in.readInt();
+        if (hz != (int) Math.round(1.0 / GameEngine.SIM_DT))
+            throw new IOException("replay recorded at " + hz + " Hz");
+        try {
+            this.arena = new Arena(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("bad replay arena: " + e.getMessage());
+        }
+
+        int n = (int) readVarLong(in);
+        hashTicks = new long[n];
+        hashes = new long[n];
+        for (int i = 0; i < n; i++) {
+            hashTicks[i] = readVarLong(in);
+            hashes[i] = in.readLong();
+        }
+    }
+
+    public static ReplayPlayer open(Path file) throws IOException {
+        InputStream raw = Files.newInputStream(file);
+        return new ReplayPlayer(new DataInputStream(new GZIPInputStream(raw, 8192)));
+    }
+
+    /** 重播結果 */
+    public static final class Result {
+        public long ticks;
+        public int mismatches;
+        public double seconds;
+        public GameEngine engine;
+    }
+
+    /** 跑完整個檔案 */
+    public Result play() throws IOException {
+        GameEngine engine = new GameEngine(arena, difficulty, this, new NoopRunRepository(), seed);
+        Result res = new Result();
+        res.engine = engine;
+
+        int h = 0;
+        long t0 = System.nanoTime();
+        while (nextTick()) {
+            engine.tick(GameEngine.SIM_DT, InputPolicy.up(flags), InputPolicy.down(flags),
+                    InputPolicy.left(flags), InputPolicy.right(flags));
+            res.ticks++;
+
+            if (h < hashTicks.length && hashTicks[h] == res.ticks) {
+                if (engine.stateHash() != hashes[h]) {
+                    res.mismatches++;
+                    if (res.mismatches <= 5)
+                        System.err.printf("[ReplayPlayer] state hash mismatch at tick %d%n", res.ticks);
+                }
+                h++;
+            }
+        }
+        res.seconds = (System.nanoTime() - t0) / 1_000_000_000.0;
+        engine.close();
+        in.close();
+        return res;
+    }
+
+    /** 讀到下一個 tick 的輸入；檔案結束回傳 false */
+    private boolean nextTick() throws IOException {
+        if (ended) return false;
+        while (runLeft == 0) {
+            int ev = in.read();
+            switch (ev) {
+                case ReplayRecorder.EV_INPUT:
+                    flags = in.readUnsignedByte();
+                    runLeft = readVarLong(in);
+                    break;
+                case ReplayRecorder.EV_END:
+                    return false;
+                case -1:
+                    throw new EOFException();
+                default:
+                    throw new IOException("unexpected replay event " + ev);
+            }
+        }
+        runLeft--;
+        return true;
+    }
+
+    /** 重播時的選卡：讀下一個 CARD 事件 */
+    @Override
+    public Card choose(int level, List<Card> options) {
+        try {
+            int ev = in.read();
+            if (ev == ReplayRecorder.EV_END) {
+                ended = true;
+                return null;
+            }
+            if (ev != ReplayRecorder.EV_CARD) throw new IOException("expected card event, got " + ev);
+            int idx = in.readUnsignedByte();
+            if (idx == ReplayRecorder.NO_CARD || idx >= options.size()) return null;
+            return options.get(idx);
+        } catch (IOException e) {
+            throw new IllegalStateException("replay out of sync at level " + level, e);
+        }
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        int shift = 0;
+        while (true) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+            shift += 7;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: ReplayPlayer FILE [--repeat N]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        int repeat = args.length >= 3 && args[1].equals("--repeat") ? Integer.parseInt(args[2]) : 1;
+
+        long ticks = 0;
+        double sec = 0;
+        int mismatches = 0;
+        for (int i = 0; i < repeat; i++) {
+            Result r = open(file).play();
+            ticks += r.ticks;
+            sec += r.seconds;
+            mismatches += r.mismatches;
+            if (i == 0) {
+                GameEngine e = r.engine;
+                System.out.printf("replay: seed=%d time=%.1fs level=%d kills=%d score=%d alive=%b%n",
+                        e.seed, e.survivedSec, e.gs.level, e.gs.kills, e.gs.score, e.alive);
+            }
+        }
+        double realSec = ticks * GameEngine.SIM_DT;
+        System.out.printf("%d ticks in %.2fs -> %.0f ticks/sec (%.0fx real time), hash mismatches: %d%n",
+                ticks, sec, ticks / sec, realSec / sec, mismatches);
+    }
+}
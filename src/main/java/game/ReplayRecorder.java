@@ -0,0 +1,132 @@
+package game;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 錄下一場的 seed、每個 tick 的方向鍵與選卡，之後可以不開視窗全速重播（ReplayPlayer）。
+ * 方向鍵以 run-length 編碼（flags + 持續幾個 tick），另外每 HASH_EVERY 個 tick 記一次狀態 hash，
+ * 重播時用來抓出不一致。整個檔案再 gzip，一場 30 分鐘大約幾 KB。
+ *
+ * 檔案格式（gzip 之後）：
+ *   int MAGIC, int VERSION, long seed, int difficulty, int simHz,
+ *   int cols, rows, cell, viewCols, viewRows, margin（Arena，重播要同樣大小的地圖）
+ *   hash 區：count(varint)，每筆 tick(varint) hash(long)
+ *   事件：INPUT flags(byte) run(varint) | CARD index(byte，255 = 沒選) | END ticks(varint)
+ */
+public class ReplayRecorder {
+
+    static final int MAGIC = 0x534E5250;  // "SNRP"
+    static final int VERSION = 6;  // 2：經驗球改成每格合併，3：子彈鎖定目標，4：活動範圍，5：抽卡方式，6：記地圖大小
+    static final int EV_END = 0, EV_INPUT = 1, EV_CARD = 2;
+    static final int NO_CARD = 255;
+    public static final int HASH_EVERY = 1200;  // 120 Hz 下每 10 秒
+
+    private final Arena arena;
+    private final long seed;
+    private final int difficulty;
+    private final ByteArrayOutputStream events = new ByteArrayOutputStream(4096);
+
+    private int runFlags = -1;
+    private int runLength = 0;
+    private long ticks = 0;
+
+    private long[] hashTicks = new long[64];
+    private long[] hashes = new long[64];
+    private int hashCount = 0;
+
+    public ReplayRecorder(Arena arena, long seed, int difficulty) {
+        this.arena = arena;
+        this.seed = seed;
+        this.difficulty = difficulty;
+    }
+
+    /** 每個 tick 開頭呼叫 */
+    void input(int flags) {
+        if (flags != runFlags) {
+            flushRun();
+            runFlags = flags;
+        }
+        runLength++;
+        ticks++;
+    }
+
+    /** 選卡時呼叫（升級的那個 tick 之後、下一個 tick 之前）；先把目前的 run 結束，重播時順序才對得上 */
+    void card(int index) {
+        flushRun();
+        runFlags = -1;
+        events.write(EV_CARD);
+        events.write(index < 0 ? NO_CARD : index);
+    }
+
+    /** tick 結束後呼叫 */
+    void afterTick(GameEngine engine) {
+        if (ticks % HASH_EVERY != 0) return;
+        if (hashCount == hashes.length) {
+            hashes = Arrays.copyOf(hashes, hashCount * 2);
+            hashTicks = Arrays.copyOf(hashTicks, hashCount * 2);
+        }
+        hashTicks[hashCount] = ticks;
+        hashes[hashCount] = engine.stateHash();
+        hashCount++;
+    }
+
+    public long ticks() { return ticks; }
+
+    public void save(Path file) throws IOException {
+        flushRun();
+        runFlags = -1;
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(seed);
+            out.writeInt(difficulty);
+            out.writeInt((int) Math.round(1.0 / GameEngine.SIM_DT));
+            out.writeInt(arena.cols);
+            out.writeInt(arena.rows);
+            out.writeInt(arena.cell);
+            out.writeInt(arena.viewCols);
+            out.writeInt(arena.viewRows);
+            out.writeInt(arena.margin);
+
+            // hash 放在事件前面，重播時先讀進來邊跑邊比對
+            writeVarLong(out, hashCount);
+            for (int i = 0; i < hashCount; i++) {
+                writeVarLong(out, hashTicks[i]);
+                out.writeLong(hashes[i]);
+            }
+
+            events.writeTo(out);
+            out.write(EV_END);
+            writeVarLong(out, ticks);
+        }
+    }
+
+    private void flushRun() {
+        if (runLength == 0) return;
+        events.write(EV_INPUT);
+        events.write(runFlags);
+        try {
+            writeVarLong(events, runLength);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);  // ByteArrayOutputStream 不會丟
+        }
+        runLength = 0;
+    }
+
+    static void writeVarLong(OutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+}
@@ -0,0 +1,47 @@
+package game;
+
+import entities.RunRecord;
+import data.RunRepository;
+
+import java.time.Instant;
+import java.util.Collections;
+
+/**
+ * GameEvents 的訂閱者：game over 時存這一場，並更新 game over 畫面的歷史紀錄、這個難度的統計與個人最佳。
+ * 在自己的執行緒上跑，存檔跟查詢都不會卡到 tick。
+ */
+public class RunPersistence implements GameEvents.Handler {
+
+    private static final int HISTORY_SHOW_N = 8;
+    private static final int STATS_TOP_N = 10;
+
+    private final GameEngine engine;
+    private final RunRepository runs;
+    private int generation;  // 目前這一場的 runGeneration（跟著 RESET 事件，順序跟 GAME_OVER 一致）
+
+    public RunPersistence(GameEngine engine, RunRepository runs) {
+        this.engine = engine;
+        this.runs = runs;
+    }
+
+    @Override
+    public void onEvent(int type, long tick, long a, long b, long c) {
+        if (type == GameEvents.RESET) generation = (int) a;
+        if (type != GameEvents.GAME_OVER) return;
+
+        int level = (int) (a >>> 32), difficulty = (int) a;
+        int kills = (int) (b >>> 32), score = (int) b;
+        double survivedSec = Double.longBitsToDouble(c);
+        int gen = generation;  // 查詢結果回來時可能已經 reset 過了
+        try {
+            runs.saveRun(new RunRecord(Instant.now().toString(), difficulty, level, survivedSec, kills, score));
+            // 先用快取畫出來，新資料（一次查完）到了再更新
+            engine.publishHistory(gen, runs.fetchRecentRuns(HISTORY_SHOW_N), null, null);
+            runs.fetchOverviewAsync(difficulty, STATS_TOP_N, HISTORY_SHOW_N,
+                    o -> engine.publishHistory(gen, o.recent, o.stats, o.bests));
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            engine.publishHistory(gen, Collections.singletonList(new RunRecord(Instant.now().toString(), -1, -1, 0, 0, 0)), null, null);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package game;
+
+/**
+ * 依腳本重複輸入，例如 "RRRRDDDDLLLLUUUU"。
+ * 每個字元維持 ticksPerStep 個 tick；U/D/L/R 以外的字元代表不按。
+ */
+public class ScriptedInput implements InputPolicy {
+
+    private final String script;
+    private final int ticksPerStep;
+    private long tick = 0;
+
+    public ScriptedInput(String script, int ticksPerStep) {
+        this.script = script.isEmpty() ? "." : script;
+        this.ticksPerStep = Math.max(1, ticksPerStep);
+    }
+
+    @Override
+    public int decide(GameEngine engine) {
+        char c = script.charAt((int) ((tick++ / ticksPerStep) % script.length()));
+        switch (c) {
+            case 'U': return UP;
+            case 'D': return DOWN;
+            case 'L': return LEFT;
+            case 'R': return RIGHT;
+            default: return 0;
+        }
+    }
+}
@@ -1,14 +1,12 @@
 package game;
 
-import ui.DifficultyDialog;
+import data.RunRepositories;
 
 import javax.swing.*;
 
 public class SnakeGame{
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> {
-            int diff = DifficultyDialog.askDifficulty();
-            new GameFrame(diff).setVisible(true);
-        });
+        RunRepositories.warmUp();  // 紀錄存放位置（MongoDB 的話要連線）在背景準備，畫面不等它
+        SwingUtilities.invokeLater(() -> GameFrame.create().setVisible(true));
     }
 }
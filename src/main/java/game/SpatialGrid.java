@@ -0,0 +1,193 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * 以 CELL 格子為單位的敵人索引：每格一條由 slot（EnemyPool 的 index）串起來的鏈結串列。
+ * 最近敵人查詢由查詢點所在格子一圈一圈往外找，找到且外圈不可能更近就停。
+ * 另外每 CHUNK×CHUNK 格記一個數量與一條 slot 串列：大地圖上敵人稀疏時整塊空的 chunk 直接跳過，
+ * 只處理活動範圍附近的敵人時也只要走那幾個 chunk（collect）。
+ */
+public class SpatialGrid {
+
+    private final int cols, rows, cell;
+    private static final int CHUNK_SHIFT = 3;  // 8×8 格一個 chunk
+    private final int[] head;          // 每格第一個 slot，-1 = 空
+    private final int chunkCols;
+    private final int[] chunkCount;    // 每個 chunk 裡的敵人數
+    private final int[] chunkHead;     // 每個 chunk 第一個 slot，-1 = 空
+    private int[] next, prev, cellOf;  // 依 slot 索引
+    private int[] chunkNext, chunkPrev;
+
+    public SpatialGrid(int cols, int rows, int cell, int slotCapacity) {
+        this.cols = cols;
+        this.rows = rows;
+        this.cell = cell;
+        this.head = new int[cols * rows];
+        Arrays.fill(head, -1);
+        this.chunkCols = (cols >> CHUNK_SHIFT) + 1;
+        this.chunkCount = new int[chunkCols * ((rows >> CHUNK_SHIFT) + 1)];
+        this.chunkHead = new int[chunkCount.length];
+        Arrays.fill(chunkHead, -1);
+        this.next = new int[slotCapacity];
+        this.prev = new int[slotCapacity];
+        this.cellOf = new int[slotCapacity];
+        this.chunkNext = new int[slotCapacity];
+        this.chunkPrev = new int[slotCapacity];
+    }
+
+    public void add(int slot, int gx, int gy) {
+        if (slot >= next.length) grow(slot + 1);
+        link(slot, index(gx, gy));
+    }
+
+    public void remove(int slot) {
+        unlink(slot);
+    }
+
+    /** slot 移到 (gx, gy) */
+    public void move(int slot, int gx, int gy) {
+        int c = index(gx, gy);
+        if (cellOf[slot] == c) return;
+        unlink(slot);
+        link(slot, c);
+    }
+
+    /** 池子 swap-remove 時，把 from 的資料搬到 to（to 必須已經 remove 過） */
+    public void relocate(int from, int to) {
+        int c = cellOf[from];
+        int n = next[from], p = prev[from];
+        next[to] = n; prev[to] = p; cellOf[to] = c;
+        if (p >= 0) next[p] = to; else head[c] = to;
+        if (n >= 0) prev[n] = to;
+
+        int cn = chunkNext[from], cp = chunkPrev[from];
+        chunkNext[to] = cn; chunkPrev[to] = cp;
+        if (cp >= 0) chunkNext[cp] = to; else chunkHead[chunkOf(c)] = to;
+        if (cn >= 0) chunkPrev[cn] = to;
+    }
+
+    public void clear() {
+        Arrays.fill(head, -1);
+        Arrays.fill(chunkCount, 0);
+        Arrays.fill(chunkHead, -1);
+    }
+
+    /**
+     * [x0, x1] × [y0, y1] 所在 chunk 裡的所有 slot，由小到大寫進 out，回傳個數（以 chunk 為單位，可能多幾隻範圍外的）。
+     * out 要放得下全部敵人。
+     */
+    public int collect(int x0, int y0, int x1, int y1, int[] out) {
+        int n = 0;
+        for (int cy = y0 >> CHUNK_SHIFT; cy <= y1 >> CHUNK_SHIFT; cy++)
+            for (int cx = x0 >> CHUNK_SHIFT; cx <= x1 >> CHUNK_SHIFT; cx++)
+                for (int s = chunkHead[cy * chunkCols + cx]; s >= 0; s = chunkNext[s]) out[n++] = s;
+        Arrays.sort(out, 0, n);
+        return n;
+    }
+
+    public boolean isOccupied(int gx, int gy) {
+        return head[index(gx, gy)] >= 0;
+    }
+
+    /** 格子 (gx, gy) 上的任一敵人 slot，沒有則回傳 -1 */
+    public int firstAt(int gx, int gy) {
+        if (gx < 0 || gx >= cols || gy < 0 || gy >= rows) return -1;
+        return head[index(gx, gy)];
+    }
+
+    /** 離像素座標 (sx, sy) 最近的敵人 slot（以格子中心計算距離），沒有則回傳 -1 */
+    public int nearest(double sx, double sy) {
+        return nearest(sx, sy, 0, 0, cols - 1, rows - 1);
+    }
+
+    /** 同上，但只找 [bx0, bx1] × [by0, by1] 範圍裡的格子 */
+    public int nearest(double sx, double sy, int bx0, int by0, int bx1, int by1) {
+        int cx = Math.max(bx0, Math.min(bx1, (int) Math.floor(sx / cell)));
+        int cy = Math.max(by0, Math.min(by1, (int) Math.floor(sy / cell)));
+        int maxR = Math.max(Math.max(cx - bx0, bx1 - cx), Math.max(cy - by0, by1 - cy));
+        if (!anyIn(bx0, by0, bx1, by1)) return -1;
+
+        int best = -1;
+        double bestD2 = Double.MAX_VALUE;
+
+        for (int r = 0; r <= maxR; r++) {
+            // 第 r 圈的格子中心至少距離 r*CELL - CELL/2，已經不可能更近就停
+            double minD = r * cell - cell / 2.0;
+            if (best >= 0 && minD > 0 && minD * minD > bestD2) break;
+
+            int x0 = cx - r, x1 = cx + r, y0 = cy - r, y1 = cy + r;
+            for (int gy = Math.max(by0, y0); gy <= Math.min(by1, y1); gy++) {
+                boolean edgeRow = gy == y0 || gy == y1;
+                int step = edgeRow ? 1 : Math.max(1, x1 - x0);
+                int chunkRow = (gy >> CHUNK_SHIFT) * chunkCols;
+                for (int gx = x0; gx <= x1; gx += step) {
+                    if (gx < bx0 || gx > bx1) continue;
+                    if (chunkCount[chunkRow + (gx >> CHUNK_SHIFT)] == 0) {
+                        // 整個 chunk 是空的：邊上那一排直接跳到下一個 chunk
+                        if (edgeRow) gx = ((gx >> CHUNK_SHIFT) + 1 << CHUNK_SHIFT) - 1;
+                        continue;
+                    }
+                    int h = head[gy * cols + gx];
+                    if (h < 0) continue;
+
+                    double ex = gx * cell + cell / 2.0, ey = gy * cell + cell / 2.0;
+                    double d2 = GameEngine.dist2(sx, sy, ex, ey);
+                    if (d2 < bestD2) { bestD2 = d2; best = h; }
+                }
+            }
+        }
+        return best;
+    }
+
+    /** [x0, x1] × [y0, y1] 所在的 chunk 裡有沒有敵人（以 chunk 為單位，可能多算範圍外一點） */
+    private boolean anyIn(int x0, int y0, int x1, int y1) {
+        for (int cy = y0 >> CHUNK_SHIFT; cy <= y1 >> CHUNK_SHIFT; cy++)
+            for (int cx = x0 >> CHUNK_SHIFT; cx <= x1 >> CHUNK_SHIFT; cx++)
+                if (chunkCount[cy * chunkCols + cx] > 0) return true;
+        return false;
+    }
+
+    private int chunkOf(int c) {
+        return ((c / cols) >> CHUNK_SHIFT) * chunkCols + ((c % cols) >> CHUNK_SHIFT);
+    }
+
+    private void link(int slot, int c) {
+        int h = head[c];
+        next[slot] = h;
+        prev[slot] = -1;
+        cellOf[slot] = c;
+        if (h >= 0) prev[h] = slot;
+        head[c] = slot;
+
+        int k = chunkOf(c), ch = chunkHead[k];
+        chunkNext[slot] = ch;
+        chunkPrev[slot] = -1;
+        if (ch >= 0) chunkPrev[ch] = slot;
+        chunkHead[k] = slot;
+        chunkCount[k]++;
+    }
+
+    private void unlink(int slot) {
+        int c = cellOf[slot];
+        int n = next[slot], p = prev[slot];
+        if (p >= 0) next[p] = n; else head[c] = n;
+        if (n >= 0) prev[n] = p;
+
+        int k = chunkOf(c), cn = chunkNext[slot], cp = chunkPrev[slot];
+        if (cp >= 0) chunkNext[cp] = cn; else chunkHead[k] = cn;
+        if (cn >= 0) chunkPrev[cn] = cp;
+        chunkCount[k]--;
+    }
+
+    private void grow(int min) {
+        int n = Math.max(min, next.length * 2);
+        next = Arrays.copyOf(next, n);
+        prev = Arrays.copyOf(prev, n);
+        cellOf = Arrays.copyOf(cellOf, n);
+        chunkNext = Arrays.copyOf(chunkNext, n);
+        chunkPrev = Arrays.copyOf(chunkPrev, n);
+    }
+
+    private int index(int gx, int gy) { return gy * cols + gx; }
+}
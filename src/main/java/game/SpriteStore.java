@@ -4,28 +4,178 @@ import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
+/**
+ * Sprite atlas：所有 sprite 縮放後排進同一張跟螢幕相容的圖，畫的時候只取其中一塊。
+ * 相容的圖 Java2D 可以直接（或加速）貼上，不用每次 drawImage 都轉格式。
+ * 快取以「名稱 + 目標大小」為 key；原始 PNG 平行解碼。
+ */
 public class SpriteStore {
 
-    public Image loadAndScale(String resourcePath, int w, int h) {
-        String full = resourcePath.startsWith("/") ? resourcePath : "/" + resourcePath;
+    private static final String ASSET_DIR = "assets";
+    private static final int ATLAS_W = 256;
+    private static final int PAD = 1;
 
+    /** atlas 裡的一塊 */
+    public static final class Sprite {
+        public final int x, y, w, h;
+        Sprite(int x, int y, int w, int h) { this.x = x; this.y = y; this.w = w; this.h = h; }
+    }
+
+    private final GraphicsConfiguration gc;
+    private final Map<String, BufferedImage> sources = new HashMap<>();
+    private final Map<String, Sprite> regions = new LinkedHashMap<>();
+    private final Map<String, int[]> sizes = new LinkedHashMap<>();
+    private Image atlas;
+
+    /** gc 為 null 時（無畫面）用一般的 ARGB 圖 */
+    public SpriteStore(GraphicsConfiguration gc) {
+        this.gc = gc;
+    }
+
+    /** 螢幕預設的 GraphicsConfiguration，無畫面時回傳 null */
+    public static GraphicsConfiguration defaultConfiguration() {
+        if (GraphicsEnvironment.isHeadless()) return null;
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+    }
+
+    /** 平行解碼 assets 目錄下所有 PNG，以檔名（不含副檔名）當名稱 */
+    public void loadAssets() {
+        List<String> names = listAssets();
+        Map<String, CompletableFuture<BufferedImage>> jobs = new LinkedHashMap<>();
+        for (String n : names) jobs.put(n, CompletableFuture.supplyAsync(() -> decode(n)));
+
+        for (Map.Entry<String, CompletableFuture<BufferedImage>> e : jobs.entrySet()) {
+            BufferedImage img = e.getValue().join();
+            if (img != null) sources.put(e.getKey(), img);
+        }
+    }
+
+    /** 登記要用到的 (名稱, 大小)，全部登記完再 build() */
+    public void request(String name, int w, int h) {
+        sizes.put(key(name, w, h), new int[]{w, h});
+    }
+
+    /** 縮放並排進 atlas（shelf packing，依高度由大到小） */
+    public void build() {
+        List<String> keys = new ArrayList<>(sizes.keySet());
+        keys.removeIf(k -> !sources.containsKey(nameOf(k)));
+        keys.sort((a, b) -> Integer.compare(sizes.get(b)[1], sizes.get(a)[1]));
+
+        regions.clear();
+        int x = 0, y = 0, shelfH = 0;
+        for (String k : keys) {
+            int[] s = sizes.get(k);
+            if (x + s[0] > ATLAS_W) { x = 0; y += shelfH + PAD; shelfH = 0; }
+            regions.put(k, new Sprite(x, y, s[0], s[1]));
+            x += s[0] + PAD;
+            shelfH = Math.max(shelfH, s[1]);
+        }
+        int atlasH = Math.max(1, y + shelfH);
+
+        BufferedImage img = gc != null
+                ? gc.createCompatibleImage(ATLAS_W, atlasH, Transparency.TRANSLUCENT)
+                : new BufferedImage(ATLAS_W, atlasH, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = img.createGraphics();
+        for (String k : keys) {
+            Sprite r = regions.get(k);
+            g.drawImage(scale(sources.get(nameOf(k)), r.w, r.h), r.x, r.y, null);
+        }
+        g.dispose();
+        atlas = img;
+    }
+
+    /** 沒登記過的大小會重建 atlas（只應該發生在初始化階段） */
+    public Sprite get(String name, int w, int h) {
+        String k = key(name, w, h);
+        Sprite r = regions.get(k);
+        if (r == null && sources.containsKey(name)) {
+            request(name, w, h);
+            build();
+            r = regions.get(k);
+        }
+        return r;
+    }
+
+    /** 以 (cx, cy) 為中心畫出 sprite */
+    public void drawCentered(Graphics2D g2, Sprite s, double cx, double cy) {
+        if (s == null) return;
+        int dx = (int) (cx - s.w / 2.0), dy = (int) (cy - s.h / 2.0);
+        g2.drawImage(atlas, dx, dy, dx + s.w, dy + s.h, s.x, s.y, s.x + s.w, s.y + s.h, null);
+    }
+
+    // ===== helpers =====
+
+    private static String key(String name, int w, int h) { return name + "@" + w + "x" + h; }
+    private static String nameOf(String key) { return key.substring(0, key.indexOf('@')); }
+
+    /** 大圖一次縮太多會糊，每次最多縮一半（bilinear） */
+    private static BufferedImage scale(BufferedImage src, int w, int h) {
+        BufferedImage cur = src;
+        int cw = src.getWidth(), ch = src.getHeight();
+        do {
+            cw = Math.max(w, cw / 2);
+            ch = Math.max(h, ch / 2);
+            BufferedImage next = new BufferedImage(cw, ch, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(cur, 0, 0, cw, ch, null);
+            g.dispose();
+            cur = next;
+        } while (cw != w || ch != h);
+        return cur;
+    }
+
+    private BufferedImage decode(String name) {
+        String full = "/" + ASSET_DIR + "/" + name + ".png";
         try (InputStream is = getClass().getResourceAsStream(full)) {
             if (is == null) {
                 System.err.println("[SpriteStore] Resource not found: " + full);
                 return null;
             }
-            BufferedImage img = ImageIO.read(is);
-            Image scaled = img.getScaledInstance(w, h, Image.SCALE_SMOOTH);
+            return ImageIO.read(is);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-            BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2 = out.createGraphics();
-            g2.drawImage(scaled, 0, 0, null);
-            g2.dispose();
+    /** 列出 assets 目錄（資料夾或 jar 裡）的 PNG */
+    private List<String> listAssets() {
+        List<String> out = new ArrayList<>();
+        URL url = getClass().getResource("/" + ASSET_DIR);
+        if (url == null) {
+            System.err.println("[SpriteStore] Resource not found: /" + ASSET_DIR);
             return out;
+        }
+        try {
+            URI uri = url.toURI();
+            if (uri.getScheme().equals("jar")) {
+                try (FileSystem fs = FileSystems.newFileSystem(uri, Collections.emptyMap())) {
+                    collectPngs(fs.getPath("/" + ASSET_DIR), out);
+                }
+            } else {
+                collectPngs(Paths.get(uri), out);
+            }
         } catch (Exception e) {
             e.printStackTrace();
-            return null;
+        }
+        return out;
+    }
+
+    private static void collectPngs(Path dir, List<String> out) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(f -> f.endsWith(".png"))
+                    .sorted()
+                    .forEach(f -> out.add(f.substring(0, f.length() - 4)));
         }
     }
 }
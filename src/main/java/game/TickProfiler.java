@@ -0,0 +1,171 @@
+package game;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Timespan;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * 量 tick 各階段與畫面的耗時（System.nanoTime），記進 LatencyHistogram。
+ * 每呼叫一次 roll() 結束一個時間窗：把 p50 / p99 / max 發佈出去給 F3 overlay 與 JFR，再清空重來。
+ * lap() / record() 不配置記憶體；發佈的結果存在預先配置好的陣列裡。
+ *
+ * JFR：java -XX:StartFlightRecording=filename=snake.jfr ...，事件在 snakeGame 分類下，每秒一筆。
+ */
+public final class TickProfiler {
+
+    public static final int MOVE = 0, ENEMY = 1, SPAWN = 2, FIRE = 3, BULLETS = 4, EXP = 5;
+    public static final int CHECKPOINT = 6, TICK = 7, PAINT = 8, FRAME = 9;
+    public static final int PHASES = 10;
+    public static final String[] NAMES = {"move", "enemy", "spawn", "fire", "bullets", "exp", "ckpt", "tick", "paint", "frame"};
+
+    private final LatencyHistogram[] window = new LatencyHistogram[PHASES];
+
+    // 上一個時間窗的結果
+    private final long[] count = new long[PHASES];
+    private final long[] p50 = new long[PHASES];
+    private final long[] p99 = new long[PHASES];
+    private final long[] max = new long[PHASES];
+    private long gcCount, gcMillis;
+    private long windowNs;
+    private volatile int version = 0;
+
+    private final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+    private long gcCountBase, gcMillisBase;
+    private long windowStart = System.nanoTime();
+    private long lastFrame = 0;
+
+    private final Runnable jfrHook = this::emitJfr;
+
+    public TickProfiler() {
+        for (int i = 0; i < PHASES; i++) window[i] = new LatencyHistogram();
+        gcCountBase = gcTotalCount();
+        gcMillisBase = gcTotalMillis();
+        FlightRecorder.addPeriodicEvent(PhaseStatsEvent.class, jfrHook);
+    }
+
+    public void close() {
+        FlightRecorder.removePeriodicEvent(jfrHook);
+    }
+
+    /** 記下從 t0 到現在的時間，回傳現在，方便一段接一段量 */
+    public long lap(int phase, long t0) {
+        long now = System.nanoTime();
+        window[phase].record(now - t0);
+        return now;
+    }
+
+    public void record(int phase, long ns) {
+        window[phase].record(ns);
+    }
+
+    /** 每畫一幀呼叫，記下兩幀之間的間隔 */
+    public void frame() {
+        long now = System.nanoTime();
+        if (lastFrame != 0) window[FRAME].record(now - lastFrame);
+        lastFrame = now;
+    }
+
+    /** 距離上次 roll 超過 periodNs 才 roll；回傳有沒有 roll */
+    public boolean rollEvery(long periodNs) {
+        if (System.nanoTime() - windowStart < periodNs) return false;
+        roll();
+        return true;
+    }
+
+    /** 結束目前的時間窗並發佈結果 */
+    public void roll() {
+        long now = System.nanoTime();
+        long gcC = gcTotalCount(), gcM = gcTotalMillis();
+        synchronized (this) {
+            for (int i = 0; i < PHASES; i++) {
+                LatencyHistogram h = window[i];
+                count[i] = h.count();
+                p50[i] = h.percentile(50);
+                p99[i] = h.percentile(99);
+                max[i] = h.max();
+                h.reset();
+            }
+            gcCount = gcC - gcCountBase;
+            gcMillis = gcM - gcMillisBase;
+            windowNs = now - windowStart;
+        }
+        gcCountBase = gcC;
+        gcMillisBase = gcM;
+        windowStart = now;
+        version++;
+    }
+
+    /** 每 roll 一次加一，overlay 用來判斷要不要重畫 */
+    public int version() { return version; }
+
+    public synchronized long count(int phase) { return count[phase]; }
+    public synchronized long p50(int phase) { return p50[phase]; }
+    public synchronized long p99(int phase) { return p99[phase]; }
+    public synchronized long max(int phase) { return max[phase]; }
+    public synchronized long gcCount() { return gcCount; }
+    public synchronized long gcMillis() { return gcMillis; }
+    public synchronized long windowNs() { return windowNs; }
+
+    /** 上一個時間窗的文字摘要（HeadlessSim 用） */
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-8s %10s %10s %10s %10s%n", "phase", "count", "p50(us)", "p99(us)", "max(us)"));
+        for (int i = 0; i < PHASES; i++) {
+            if (count[i] == 0) continue;
+            sb.append(String.format("%-8s %10d %10.1f %10.1f %10.1f%n",
+                    NAMES[i], count[i], p50[i] / 1000.0, p99[i] / 1000.0, max[i] / 1000.0));
+        }
+        sb.append(String.format("gc: %d collections, %d ms in %.1fs", gcCount, gcMillis, windowNs / 1e9));
+        return sb.toString();
+    }
+
+    private long gcTotalCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean b : gcBeans) n += Math.max(0, b.getCollectionCount());
+        return n;
+    }
+
+    private long gcTotalMillis() {
+        long n = 0;
+        for (GarbageCollectorMXBean b : gcBeans) n += Math.max(0, b.getCollectionTime());
+        return n;
+    }
+
+    /** JFR 的 periodic hook（JFR 自己的執行緒）：每個階段一筆，內容是上一個時間窗 */
+    private void emitJfr() {
+        synchronized (this) {
+            for (int i = 0; i < PHASES; i++) {
+                if (count[i] == 0) continue;
+                PhaseStatsEvent e = new PhaseStatsEvent();
+                e.phase = NAMES[i];
+                e.count = count[i];
+                e.p50 = p50[i];
+                e.p99 = p99[i];
+                e.max = max[i];
+                e.commit();
+            }
+        }
+    }
+
+    @Name("snakeGame.PhaseStats")
+    @Label("Tick Phase Stats")
+    @Category("snakeGame")
+    @Description("上一個量測時間窗裡，tick 某個階段或畫面的耗時分布")
+    @Period("1 s")
+    public static final class PhaseStatsEvent extends Event {
+        @Label("Phase") public String phase;
+        @Label("Samples") public long count;
+        @Label("p50") @Timespan public long p50;
+        @Label("p99") @Timespan public long p99;
+        @Label("Max") @Timespan public long max;
+    }
+}
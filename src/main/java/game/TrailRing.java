@@ -0,0 +1,63 @@
+package game;
+
+import entities.BufferIO;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 玩家走過的格子：固定容量的環狀 buffer，x/y 壓在同一個 int 裡。
+ * 滿了就覆蓋最舊的；從尾端（最新）往回取是 O(1)，不配置記憶體。
+ */
+public class TrailRing {
+
+    private final int[] buf;
+    private int head = 0;   // 下一個寫入位置
+    private int size = 0;
+
+    public TrailRing(int capacity) {
+        this.buf = new int[capacity];
+    }
+
+    public void push(int x, int y) {
+        buf[head] = pack(x, y);
+        head = (head + 1) % buf.length;
+        if (size < buf.length) size++;
+    }
+
+    /** k = 0 是最新的一格 */
+    public int fromTail(int k) {
+        int i = head - 1 - k;
+        if (i < 0) i += buf.length;
+        return buf[i];
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public void clear() { head = 0; size = 0; }
+
+    /** snapshot：由舊到新，環繞的話分兩段 */
+    public void write(ByteBuffer b) {
+        b.putInt(size);
+        int oldest = head - size;
+        if (oldest < 0) {
+            BufferIO.putInts(b, buf, oldest + buf.length, -oldest);
+            BufferIO.putInts(b, buf, 0, head);
+        } else {
+            BufferIO.putInts(b, buf, oldest, size);
+        }
+    }
+
+    /** 讀回 write 寫的內容（比容量多的話只留最新的） */
+    public void read(ByteBuffer b) {
+        int n = b.getInt();
+        int skip = Math.max(0, n - buf.length);
+        b.position(b.position() + skip * Integer.BYTES);
+        size = n - skip;
+        BufferIO.getInts(b, buf, 0, size);
+        head = size % buf.length;
+    }
+
+    public static int pack(int x, int y) { return (x << 16) | (y & 0xFFFF); }
+    public static int unpackX(int p) { return p >> 16; }
+    public static int unpackY(int p) { return (short) p; }
+}
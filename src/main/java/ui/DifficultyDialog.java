@@ -17,4 +17,17 @@ public class DifficultyDialog {
             return 5;
         }
     }
+
+    /** 上一場沒玩完：要不要接著玩 */
+    public static boolean askResume(int difficulty, int level, double survivedSec) {
+        int s = (int) survivedSec;
+        int choice = JOptionPane.showConfirmDialog(
+                null,
+                String.format("上一場還沒結束（難度 %d、Lv %d、%02d:%02d），要接著玩嗎？", difficulty, level, s / 60, s % 60),
+                "繼續遊戲",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.QUESTION_MESSAGE
+        );
+        return choice == JOptionPane.YES_OPTION;
+    }
 }
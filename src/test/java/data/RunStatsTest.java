@@ -0,0 +1,127 @@
+package data;
+
+import entities.RunOverview;
+import entities.RunRecord;
+import entities.RunStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 排行與統計：InMemoryRunRepository（全部讀出來算）當作標準答案，有索引的實作要跟它一樣 */
+class RunStatsTest {
+
+    @TempDir
+    Path dir;
+
+    private static RunRecord run(long i, int difficulty, int score) {
+        return new RunRecord(Instant.ofEpochMilli(1_700_000_000_000L + i * 1000).toString(),
+                difficulty, 1 + score / 100, i * 0.5, score / 10, score);
+    }
+
+    @Test
+    void percentilesAreNearestRank() {
+        InMemoryRunRepository mem = new InMemoryRunRepository();
+        for (int s = 1; s <= 100; s++) mem.saveRun(run(s, 3, s));
+
+        RunStats st = mem.fetchStats(3, 5);
+        assertEquals(100, st.count);
+        assertEquals(100, st.best);
+        assertEquals(50, st.p50);
+        assertEquals(90, st.p90);
+        assertEquals(99, st.p99);
+        assertEquals(Arrays.asList(100, 99, 98, 97, 96), st.top.stream().map(r -> r.score).toList());
+        assertEquals(1, st.rankOf(100));
+        assertEquals(5, st.rankOf(96));
+        assertEquals(-1, st.rankOf(95));
+    }
+
+    @Test
+    void mappedMatchesInMemory() {
+        InMemoryRunRepository mem = new InMemoryRunRepository();
+        MappedRunRepository mapped = new MappedRunRepository(dir.resolve("runs.dat"));
+        Random rnd = new Random(42);
+        for (int i = 0; i < 3000; i++) {
+            // 分數範圍小，故意製造很多同分
+            RunRecord r = run(i, 1 + rnd.nextInt(10), rnd.nextInt(400));
+            mem.saveRun(r);
+            mapped.saveRun(r);
+        }
+
+        for (int d = 0; d <= 10; d++) {
+            for (int topN : new int[]{1, 10, 50}) {
+                RunStats a = mem.fetchStats(d, topN), b = mapped.fetchStats(d, topN);
+                String at = "difficulty " + d + " top " + topN;
+                assertEquals(a.count, b.count, at);
+                assertEquals(a.best, b.best, at);
+                assertEquals(a.p50, b.p50, at);
+                assertEquals(a.p90, b.p90, at);
+                assertEquals(a.p99, b.p99, at);
+                assertRunsEqual(a.top, b.top, at);
+                for (int score = 0; score < 420; score += 7) {
+                    assertEquals(a.rankOf(score), b.rankOf(score), at + " rank of " + score);
+                    assertEquals(a.isPersonalBest(score), b.isPersonalBest(score), at + " best " + score);
+                }
+            }
+        }
+        assertRunsEqual(mem.fetchPersonalBests(), mapped.fetchPersonalBests(), "personal bests");
+        mapped.close();
+    }
+
+    @Test
+    void personalBestKeepsEarliestOfTies() {
+        InMemoryRunRepository mem = new InMemoryRunRepository();
+        mem.saveRun(run(1, 2, 300));
+        mem.saveRun(run(2, 5, 100));
+        mem.saveRun(run(3, 2, 300));
+        mem.saveRun(run(4, 2, 250));
+
+        List<RunRecord> bests = mem.fetchPersonalBests();
+        assertEquals(2, bests.size());
+        assertEquals(run(1, 2, 300).ts, bests.get(0).ts);
+        assertEquals(5, bests.get(1).difficulty);
+
+        RunStats st = mem.fetchStats(2, 10);
+        assertFalse(st.isPersonalBest(300));  // 跟較早的一場同分
+        assertTrue(st.isPersonalBest(301));   // 還沒存進去的新高分
+        assertFalse(st.isPersonalBest(250));
+    }
+
+    @Test
+    void writeBehindOverviewIncludesTheQueuedRun() throws Exception {
+        InMemoryRunRepository mem = new InMemoryRunRepository();
+        mem.saveRun(run(1, 4, 500));
+        RunWriteBehind wb = new RunWriteBehind(mem, dir.resolve("runs.journal"));
+
+        RunRecord r = run(2, 4, 700);
+        wb.saveRun(r);
+        CompletableFuture<RunOverview> got = new CompletableFuture<>();
+        wb.fetchOverviewAsync(4, 10, 8, got::complete);
+        RunOverview o = got.get(5, TimeUnit.SECONDS);
+
+        assertEquals(r.ts, o.recent.get(0).ts);
+        assertEquals(2, o.stats.count);
+        assertEquals(1, o.stats.rankOf(700));
+        assertTrue(o.stats.isPersonalBest(700));
+        assertEquals(700, o.bests.get(0).score);
+        wb.close();
+        assertEquals(2, mem.size());
+    }
+
+    private static void assertRunsEqual(List<RunRecord> a, List<RunRecord> b, String at) {
+        assertEquals(a.size(), b.size(), at);
+        for (int i = 0; i < a.size(); i++) {
+            assertEquals(a.get(i).ts, b.get(i).ts, at + " #" + i);
+            assertEquals(a.get(i).difficulty, b.get(i).difficulty, at + " #" + i);
+            assertEquals(a.get(i).score, b.get(i).score, at + " #" + i);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package data;
+
+import entities.RunRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** journal 的補寫與關閉時的最後一批 */
+class RunWriteBehindTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void badJournalLinesAreSetAsideAndNotReplayedTwice() throws Exception {
+        Path journal = dir.resolve("runs.journal");
+        Files.write(journal, Arrays.asList(
+                "2026-01-01T00:00:00Z\t3\t2\t10.5\t4\t40",
+                "2026-01-01T00:01:00Z\tx\t2\t10.5\t4\t40",
+                "2026-01-01T00:02:00Z\t3\t5\t60.0\t20\t200"), StandardCharsets.UTF_8);
+        // 當掉時寫到一半的最後一行（沒有換行，分數被截斷）
+        Files.write(journal, "2026-01-01T00:03:00Z\t3\t9\t90.0\t35\t3".getBytes(StandardCharsets.UTF_8),
+                java.nio.file.StandardOpenOption.APPEND);
+
+        InMemoryRunRepository mem = new InMemoryRunRepository();
+        new RunWriteBehind(mem, journal).close();
+        assertEquals(2, mem.size());
+        assertFalse(Files.exists(journal));
+        List<String> bad = Files.readAllLines(dir.resolve("runs.journal.bad"), StandardCharsets.UTF_8);
+        assertEquals(2, bad.size());
+        assertTrue(bad.get(1).endsWith("\t3"));
+
+        new RunWriteBehind(mem, journal).close();
+        assertEquals(2, mem.size());
+    }
+
+    @Test
+    void closeJournalsTheBatchTheWorkerIsStuckOn() throws Exception {
+        CountDownLatch saving = new CountDownLatch(1);
+        InMemoryRunRepository down = new InMemoryRunRepository() {
+            @Override
+            public synchronized void saveRuns(List<RunRecord> batch) {
+                saving.countDown();
+                throw new IllegalStateException("database down");
+            }
+        };
+        Path journal = dir.resolve("runs.journal");
+        RunWriteBehind wb = new RunWriteBehind(down, journal);
+        wb.saveRun(new RunRecord("2026-01-01T00:00:00Z", 4, 3, 30.0, 12, 120));
+        assertTrue(saving.await(5, TimeUnit.SECONDS));
+        wb.close();  // worker 正在退避重試
+
+        InMemoryRunRepository up = new InMemoryRunRepository();
+        new RunWriteBehind(up, journal).close();
+        assertEquals(1, up.size());
+        assertEquals(120, up.fetchRecentRuns(1).get(0).score);
+    }
+}
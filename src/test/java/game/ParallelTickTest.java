@@ -0,0 +1,89 @@
+package game;
+
+import cards.AutoCardChooser;
+import data.NoopRunRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 平行 tick 要跟單執行緒一模一樣：同一份 snapshot 各走一次，每個 tick 比 stateHash */
+class ParallelTickTest {
+
+    private static final int ENEMIES = 4000, BULLETS = 3000, TICKS = 240;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);  // 單核心的機器上也會真的分給別的執行緒
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void parallelMatchesSerialFromSnapshot() throws Exception {
+        ByteBuffer snapshot = crowdedSnapshot();
+
+        GameEngine serial = GameEngine.readSnapshot(snapshot.duplicate(), new AutoCardChooser(new GameRng(7)), new NoopRunRepository());
+        GameEngine parallel = GameEngine.readSnapshot(snapshot.duplicate(), new AutoCardChooser(new GameRng(7)), new NoopRunRepository());
+        serial.setPool(null);
+        parallel.setPool(pool);
+        try {
+            assertEquals(serial.stateHash(), parallel.stateHash());
+            assertTrue(serial.enemies().size() >= GameEngine.PARALLEL_THRESHOLD * 4, "enemies above the parallel threshold");
+            assertTrue(serial.bullets().size() >= GameEngine.PARALLEL_THRESHOLD * 4, "bullets above the parallel threshold");
+
+            ChaseBot bot = new ChaseBot();
+            int parallelBulletTicks = 0;  // 子彈多到走平行路徑的 tick 數
+            for (int t = 0; t < TICKS; t++) {
+                if (parallel.bullets().size() >= GameEngine.PARALLEL_THRESHOLD) parallelBulletTicks++;
+                int in = bot.decide(serial);
+                serial.tick(GameEngine.SIM_DT, InputPolicy.up(in), InputPolicy.down(in), InputPolicy.left(in), InputPolicy.right(in));
+                parallel.tick(GameEngine.SIM_DT, InputPolicy.up(in), InputPolicy.down(in), InputPolicy.left(in), InputPolicy.right(in));
+                assertEquals(serial.stateHash(), parallel.stateHash(), "diverged at tick " + t);
+                topUpBullets(serial);
+                topUpBullets(parallel);
+            }
+            assertTrue(serial.alive, "player survived the compared ticks");
+            assertTrue(serial.gs.kills > 0, "bullets hit something");
+            assertEquals(TICKS, parallelBulletTicks, "bullet phase ran in parallel for " + parallelBulletTicks + " ticks");
+        } finally {
+            serial.close();
+            parallel.close();
+        }
+    }
+
+    /** 打中或飛出去的子彈在固定位置補回來（兩邊補一樣的），讓每個 tick 都超過門檻 */
+    private static void topUpBullets(GameEngine e) {
+        for (int i = e.bullets().size(); i < BULLETS; i++) {
+            double sx = (i * 37) % e.arena.width, sy = (i * 53) % e.arena.height;
+            e.spawnBullet(sx, sy, sx + 1, sy + 1);
+        }
+    }
+
+    /** 整張 200x200 都在活動範圍內：敵人放在玩家 10 格外，子彈隨機方向 */
+    private static ByteBuffer crowdedSnapshot() {
+        Arena arena = new Arena(200, 200, 32, 200, 200, 0);
+        GameEngine e = new GameEngine(arena, 5, new AutoCardChooser(new GameRng(7)), new NoopRunRepository(), 42);
+        Random r = new Random(42);
+        for (int placed = 0; placed < ENEMIES; ) {
+            int gx = r.nextInt(arena.cols), gy = r.nextInt(arena.rows);
+            if (Math.max(Math.abs(gx - e.px), Math.abs(gy - e.py)) <= 10) continue;
+            e.spawnEnemyAt(gx, gy, 3 + r.nextInt(20));
+            placed++;
+        }
+        for (int i = 0; i < BULLETS; i++) {
+            double sx = r.nextDouble() * arena.width, sy = r.nextDouble() * arena.height;
+            double a = r.nextDouble() * Math.PI * 2;
+            e.spawnBullet(sx, sy, sx + Math.cos(a), sy + Math.sin(a));
+        }
+        ByteBuffer b = ByteBuffer.allocate(4 << 20);
+        e.writeSnapshot(b);
+        b.flip();
+        e.close();
+        return b;
+    }
+}